@@ -0,0 +1,138 @@
+package uhh_lt.keyterms;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Extracts the sample texts from several threads at once, with one shared
+ * {@link Extractor} per language and setting (single keyterms, multi-word
+ * units), checks every result against the single-threaded one and reports
+ * the throughput per number of threads. Exits with status 1 on a mismatch.
+ *
+ * Arguments are the numbers of threads (default: 1, 2, 4, ... up to twice
+ * the number of processors); the system property keyterms.check.seconds
+ * sets the duration per number of threads (default: 5).
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar uhh_lt.keyterms.ConcurrencyCheck 1 4 8
+ * </pre>
+ */
+public class ConcurrencyCheck {
+
+	static final String[] SAMPLES = { "eng_sample", "bush_I", "bush_II", "deu_sample", "fra_sample", "zho_sample", "ara_sample" };
+
+	public static void main(String[] args) throws Exception {
+		List<Integer> threadCounts = new ArrayList<Integer>();
+		for (String arg : args) {
+			threadCounts.add(Integer.parseInt(arg));
+		}
+		if (threadCounts.isEmpty()) {
+			int processors = Runtime.getRuntime().availableProcessors();
+			for (int threads = 1; threads <= 2 * processors; threads *= 2) {
+				threadCounts.add(threads);
+			}
+		}
+		long nanos = TimeUnit.SECONDS.toNanos(Integer.getInteger("keyterms.check.seconds", 5));
+
+		// expected results from a single thread
+		final List<Task> tasks = new ArrayList<Task>();
+		Map<String, Extractor> extractors = new HashMap<String, Extractor>();
+		for (boolean multiWords : new boolean[] { false, true }) {
+			for (String sample : SAMPLES) {
+				String language = Samples.language(sample);
+				Extractor extractor = extractors.get(language + multiWords);
+				if (extractor == null) {
+					extractor = new Extractor(language, 25);
+					extractor.setConcatMultiWordUnits(multiWords);
+					extractors.put(language + multiWords, extractor);
+				}
+				String text = Samples.read(sample);
+				tasks.add(new Task(sample + (multiWords ? " (multi-word units)" : ""), extractor, text));
+			}
+		}
+
+		// warm-up, not reported
+		int mismatches = run(tasks, threadCounts.get(threadCounts.size() - 1), nanos, false);
+		for (int threads : threadCounts) {
+			mismatches += run(tasks, threads, nanos, true);
+		}
+		System.exit(mismatches > 0 ? 1 : 0);
+	}
+
+	private static int run(final List<Task> tasks, int threads, final long nanos, boolean report) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicLong documents = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+		final AtomicInteger mismatches = new AtomicInteger();
+		List<Future<?>> workers = new ArrayList<Future<?>>();
+		for (int t = 0; t < threads; t++) {
+			final int offset = t;
+			workers.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws InterruptedException {
+					start.await();
+					long deadline = System.nanoTime() + nanos;
+					// every thread starts at another task, so different texts run at the same time
+					for (int i = offset; System.nanoTime() < deadline; i++) {
+						Task task = tasks.get(i % tasks.size());
+						Map<String, Double> keyness = task.extractor.extractKeyness(task.text);
+						if (!task.matches(keyness) && mismatches.getAndIncrement() < 10) {
+							System.out.println("Mismatch for " + task.name + ": " + keyness + " instead of " + task.expected);
+						}
+						documents.incrementAndGet();
+						bytes.addAndGet(task.bytes);
+					}
+					return null;
+				}
+			}));
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Future<?> worker : workers) {
+			worker.get();
+		}
+		double seconds = (System.nanoTime() - begin) / 1e9;
+		executor.shutdown();
+		if (report) {
+			System.out.println(String.format("%3d threads: %9.1f documents/s, %7.2f MB/s, %d mismatches",
+					threads, documents.get() / seconds, bytes.get() / 1e6 / seconds, mismatches.get()));
+		}
+		return mismatches.get();
+	}
+
+	private static class Task {
+
+		final String name;
+		final Extractor extractor;
+		final String text;
+		final long bytes;
+		final List<Map.Entry<String, Double>> expected;
+
+		Task(String name, Extractor extractor, String text) {
+			this.name = name;
+			this.extractor = extractor;
+			this.text = text;
+			this.bytes = text.getBytes(Charsets.UTF_8).length;
+			this.expected = new ArrayList<Map.Entry<String, Double>>(extractor.extractKeyness(text).entrySet());
+		}
+
+		// same keyterms, keyness and rank order
+		boolean matches(Map<String, Double> keyness) {
+			return expected.equals(new ArrayList<Map.Entry<String, Double>>(keyness.entrySet()));
+		}
+	}
+
+}
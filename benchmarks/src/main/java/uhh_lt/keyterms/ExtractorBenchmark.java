@@ -0,0 +1,73 @@
+package uhh_lt.keyterms;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The stages of an extraction on a tokenized and normalized sample text:
+ * counting the target vocabulary, scoring the stems, concatenating
+ * multi-word units, and the whole extraction from the raw text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractorBenchmark {
+
+	@Param({ "eng_sample", "bush_I", "deu_sample", "fra_sample", "zho_sample", "ara_sample" })
+	public String sample;
+
+	private String text;
+	private String language;
+	private Extractor extractor;
+	private Document document;
+	private Dictionary target;
+	private double[] keyness;
+
+	@Setup
+	public void setup() throws IOException {
+		text = Samples.read(sample);
+		language = Samples.language(sample);
+		extractor = new Extractor(language, 25);
+		document = Document.readText(text, language);
+		document.normalizeSentenceBeginning(extractor.getComparison());
+		target = new Dictionary(language, document);
+		keyness = extractor.getKeyness(target, extractor.getComparison());
+	}
+
+	@Benchmark
+	public Dictionary countVocabulary() {
+		return new Dictionary(language, document);
+	}
+
+	@Benchmark
+	public double[] getKeyness() {
+		return extractor.getKeyness(target, extractor.getComparison());
+	}
+
+	@Benchmark
+	public Map<String, Double> concatMultiWords() {
+		return extractor.concatMultiWords(keyness, target, document);
+	}
+
+	@Benchmark
+	public Map<String, Double> extractKeyness() {
+		return extractor.extractKeyness(text);
+	}
+
+}
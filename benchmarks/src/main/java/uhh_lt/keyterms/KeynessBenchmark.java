@@ -0,0 +1,47 @@
+package uhh_lt.keyterms;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scoring a large target: the English and German reference lists merged
+ * into one dictionary, against the English reference. Every English type
+ * is a candidate and the German ones are keyterms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeynessBenchmark {
+
+	private Extractor extractor;
+	private Dictionary target;
+
+	@Setup
+	public void setup() throws IOException {
+		extractor = new Extractor("eng", 25);
+		target = new ReferenceMerger()
+				.addInternal("eng", 1)
+				.addInternal("deu", 1)
+				.toDictionary("eng");
+	}
+
+	@Benchmark
+	public double[] getKeyness() {
+		return extractor.getKeyness(target, extractor.getComparison());
+	}
+
+}
@@ -0,0 +1,80 @@
+package uhh_lt.keyterms;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reference lookups of the distinct tokens of a sample text, as made by the
+ * normalization and the keyness scoring, with the reference on the heap,
+ * off the heap, and off the heap behind a Bloom filter. The absent terms
+ * (the tokens with a suffix) are the case the Bloom filter is for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReferenceLookupBenchmark {
+
+	@Param({ "bush_I", "deu_sample" })
+	public String sample;
+
+	@Param({ "heap", "offheap", "bloom" })
+	public String store;
+
+	private Dictionary reference;
+	private String[] terms;
+	private String[] absentTerms;
+
+	@Setup
+	public void setup() throws IOException {
+		System.setProperty(OffHeapTermStore.PROPERTY, Boolean.toString(!store.equals("heap")));
+		System.setProperty(OffHeapTermStore.BLOOM_PROPERTY, store.equals("bloom") ? "10" : "0");
+		String language = Samples.language(sample);
+		reference = new Dictionary(language);
+		LinkedHashSet<String> distinct = new LinkedHashSet<String>();
+		for (String token : new Document(language).tokenize(Samples.read(sample))) {
+			distinct.add(token);
+			distinct.add(token.toLowerCase());
+		}
+		terms = distinct.toArray(new String[distinct.size()]);
+		absentTerms = new String[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			absentTerms[i] = terms[i] + "_x";
+		}
+	}
+
+	@Benchmark
+	public long lookup() {
+		return lookup(terms);
+	}
+
+	@Benchmark
+	public long lookupAbsent() {
+		return lookup(absentTerms);
+	}
+
+	private long lookup(String[] terms) {
+		long sum = 0;
+		for (String term : terms) {
+			int id = reference.getId(term);
+			sum += reference.getTypeFrequency(id) + reference.getStemFrequency(id) + (reference.isStopword(id) ? 1 : 0);
+		}
+		return sum;
+	}
+
+}
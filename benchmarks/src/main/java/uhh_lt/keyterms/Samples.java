@@ -0,0 +1,27 @@
+package uhh_lt.keyterms;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Benchmark fixtures: the sample texts of the main module's test resources,
+ * read from the directory in the system property keyterms.samples
+ * (default ../src/test/resources, relative to this module).
+ */
+class Samples {
+
+	static final String DIRECTORY_PROPERTY = "keyterms.samples";
+
+	static String read(String sample) throws IOException {
+		String directory = System.getProperty(DIRECTORY_PROPERTY, "../src/test/resources");
+		return new String(Files.readAllBytes(Paths.get(directory, sample + ".txt")), Charsets.UTF_8);
+	}
+
+	static String language(String sample) {
+		return sample.startsWith("bush") ? "eng" : sample.substring(0, 3);
+	}
+
+}
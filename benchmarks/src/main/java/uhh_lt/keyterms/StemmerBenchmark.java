@@ -0,0 +1,64 @@
+package uhh_lt.keyterms;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Stemming of all tokens of a sample text, once through a warm stem cache
+ * and once through the Snowball stemmer alone (cache size 0).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StemmerBenchmark {
+
+	@Param({ "eng_sample", "bush_I", "deu_sample", "fra_sample" })
+	public String sample;
+
+	private List<String> tokens;
+	private StemmerWrapper cached;
+	private StemmerWrapper uncached;
+
+	@Setup
+	public void setup() throws IOException {
+		String language = Samples.language(sample);
+		tokens = new Document(language).tokenize(Samples.read(sample));
+		cached = new StemmerWrapper(language);
+		uncached = new StemmerWrapper(language, 0);
+		for (String token : tokens) {
+			cached.stem(token);
+		}
+	}
+
+	@Benchmark
+	public void stemCached(Blackhole blackhole) {
+		for (String token : tokens) {
+			blackhole.consume(cached.stem(token));
+		}
+	}
+
+	@Benchmark
+	public void stemUncached(Blackhole blackhole) {
+		for (String token : tokens) {
+			blackhole.consume(uncached.stem(token));
+		}
+	}
+
+}
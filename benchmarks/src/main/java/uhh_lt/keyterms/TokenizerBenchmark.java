@@ -0,0 +1,58 @@
+package uhh_lt.keyterms;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tokenization of the sample texts: the dispatch used by {@link Document},
+ * the regular expression reference path and the ICU path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+	@Param({ "eng_sample", "bush_I", "deu_sample", "fra_sample", "zho_sample", "ara_sample" })
+	public String sample;
+
+	private String text;
+	private Document document;
+
+	@Setup
+	public void setup() throws IOException {
+		text = Samples.read(sample);
+		document = new Document(Samples.language(sample));
+	}
+
+	@Benchmark
+	public List<String> tokenize() {
+		return document.tokenize(text);
+	}
+
+	@Benchmark
+	public List<String> tokenizeRegex() {
+		return document.tokenizeRegex(text);
+	}
+
+	@Benchmark
+	public List<String> tokenizeICU() {
+		return document.tokenizeICU(text);
+	}
+
+}
@@ -0,0 +1,78 @@
+package uhh_lt.keyterms;
+
+import java.util.List;
+
+/**
+ * Checks that the scanning {@link Tokenizer} yields the same tokens as the
+ * regular expression <code>[\w]+|[^\w]</code> it replaced, on the sample
+ * texts, on line break edge cases and on a text with every defined code
+ * point. Exits with status 1 on a mismatch.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar uhh_lt.keyterms.TokenizerCheck
+ * </pre>
+ */
+public class TokenizerCheck {
+
+	static final String[] SAMPLES = { "eng_sample", "bush_I", "bush_II", "deu_sample", "fra_sample", "zho_sample", "ara_sample" };
+
+	static final String[] EDGE_CASES = { "a\r\nb", "a\r\n\r\nb", "a\n\nb", "a\rb", "\r\n", "\n\n\n", "a \n b",
+			"x y z\u0085w", "a\u00a0b", "\t\u000b\u001fq", "ab\u200c\u200dcd", "\u0660\u0661 \u00b2 \u2160",
+			"\u00e9t\u00e9", "a\ud800b \udc00 x\ud83d\ude00y", "snake_case-word's" };
+
+	public static void main(String[] args) throws Exception {
+		int mismatches = 0;
+		for (String sample : SAMPLES) {
+			String text = Samples.read(sample);
+			mismatches += check(sample, text);
+			// the dispatch of Document for the languages without ICU
+			if (!Document.useICU(Samples.language(sample))) {
+				mismatches += check(sample + " (Document)", new Document(Samples.language(sample)).tokenize(text), text);
+			}
+		}
+		for (String edgeCase : EDGE_CASES) {
+			mismatches += check(escape(edgeCase), edgeCase);
+		}
+		StringBuilder codePoints = new StringBuilder();
+		for (int codePoint = 0; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+			if (Character.isDefined(codePoint) && Character.getType(codePoint) != Character.SURROGATE) {
+				codePoints.appendCodePoint(codePoint).append(codePoint % 3 == 0 ? "a" : " ");
+			}
+		}
+		mismatches += check("all code points", codePoints.toString());
+		System.out.println(mismatches + " mismatches");
+		System.exit(mismatches > 0 ? 1 : 0);
+	}
+
+	private static int check(String name, String text) {
+		return check(name, Tokenizer.tokenize(text), text);
+	}
+
+	private static int check(String name, List<String> tokens, String text) {
+		List<String> expected = new Document("eng").tokenizeRegex(text);
+		if (tokens.equals(expected)) {
+			System.out.println(name + ": " + tokens.size() + " tokens");
+			return 0;
+		}
+		int i = 0;
+		while (i < Math.min(tokens.size(), expected.size()) && tokens.get(i).equals(expected.get(i))) i++;
+		System.out.println(name + ": token " + i + " is "
+				+ (i < tokens.size() ? escape(tokens.get(i)) : "missing") + " instead of "
+				+ (i < expected.size() ? escape(expected.get(i)) : "missing"));
+		return 1;
+	}
+
+	private static String escape(String s) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if (ch < ' ' || ch > '~') {
+				sb.append(String.format("\\u%04x", (int) ch));
+			} else {
+				sb.append(ch);
+			}
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,178 @@
+package uhh_lt.keyterms;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Target counts of an unbounded stream of text in fixed memory, for
+ * keyterm extraction from estimated counts. Types and stems are each
+ * counted in a {@link CountMinSketch} and a Space-Saving heavy hitters
+ * table of fixed capacity; the keyterms are computed for the kept terms.
+ *
+ * Error bound: with probability 1 - delta, the estimated count of every
+ * kept type or stem exceeds its true count by at most epsilon times the
+ * number of tokens seen ({@link #getErrorBound()}), and is never lower than
+ * it. A term is only missing if its count is at most tokens / capacity
+ * ({@link #getMissingBound()}). Stems are counted on their own, so the
+ * keyness of a kept stem does not lose the counts of types that were not
+ * kept. Multi-word units are not concatenated, since no document is kept.
+ *
+ * Memory: two sketches of width x depth longs, plus the kept terms.
+ */
+public class ApproximateCounter {
+
+	public static final int DEFAULT_CAPACITY = 100000;
+	public static final double DEFAULT_EPSILON = 1e-4;
+	public static final double DEFAULT_DELTA = 0.01;
+
+	private final Extractor extractor;
+	private final CountMinSketch typeSketch;
+	private final CountMinSketch stemSketch;
+	private final SpaceSaving types;
+	private final SpaceSaving stems;
+
+	public ApproximateCounter(Extractor extractor) {
+		this(extractor, DEFAULT_CAPACITY, DEFAULT_EPSILON, DEFAULT_DELTA);
+	}
+
+	/**
+	 * @param capacity number of types kept
+	 * @param epsilon error of the estimated counts, as a fraction of all tokens
+	 * @param delta probability that the error bound does not hold
+	 */
+	public ApproximateCounter(Extractor extractor, int capacity, double epsilon, double delta) {
+		this.extractor = extractor;
+		this.typeSketch = new CountMinSketch(epsilon, delta);
+		this.stemSketch = new CountMinSketch(epsilon, delta);
+		this.types = new SpaceSaving(capacity);
+		this.stems = new SpaceSaving(capacity);
+	}
+
+	public synchronized void add(String text) {
+		Document document = new Document(extractor.getLanguage());
+		document.load(text);
+		add(document);
+	}
+
+	/**
+	 * Counts the tokens of a document; its sentence beginnings are
+	 * normalized in place, like for an exact extraction.
+	 */
+	public synchronized void add(Document document) {
+		document.normalizeSentenceBeginning(extractor.getComparison());
+		for (Token token : document) {
+			String type = Dictionary.clean(token.getValue());
+			if (!type.isEmpty()) {
+				String stem = Dictionary.clean(token.getStem());
+				typeSketch.add(type, 1);
+				types.add(type, stem, 1);
+				stemSketch.add(stem, 1);
+				stems.add(stem, null, 1);
+			}
+		}
+	}
+
+	/**
+	 * @return a handler that counts each chunk of a {@link DocumentReader}
+	 * as a document of its own, so only one chunk is held at a time (a
+	 * sentence beginning is assumed at the start of each chunk)
+	 */
+	DocumentReader.ChunkHandler chunkHandler() {
+		return new DocumentReader.ChunkHandler() {
+			@Override
+			public void chunk(CharBuffer chunk) {
+				Document document = new Document(extractor.getLanguage());
+				document.load(chunk, new Vocabulary());
+				add(document);
+			}
+		};
+	}
+
+	/**
+	 * @return the number of tokens counted
+	 */
+	public synchronized long getTotalCounts() {
+		return typeSketch.getTotal();
+	}
+
+	/**
+	 * @return the estimated count of a type, at least its true count
+	 */
+	public synchronized long estimate(String type) {
+		return estimate(type, typeSketch, types);
+	}
+
+	// the lower of the two overestimates
+	private static long estimate(String term, CountMinSketch sketch, SpaceSaving heavyHitters) {
+		long estimate = sketch.estimate(term);
+		int counter = heavyHitters.getCounter(term);
+		if (counter >= 0) {
+			return Math.min(estimate, heavyHitters.getCount(counter));
+		}
+		return Math.min(estimate, heavyHitters.getMinimum());
+	}
+
+	/**
+	 * @return the maximum overestimation of a count (with probability 1 - delta)
+	 */
+	public synchronized long getErrorBound() {
+		return (long) Math.ceil(typeSketch.getEpsilon() * typeSketch.getTotal());
+	}
+
+	/**
+	 * @return the maximum count of a type or stem that is not kept
+	 */
+	public synchronized long getMissingBound() {
+		return Math.max(types.getMinimum(), stems.getMinimum());
+	}
+
+	/**
+	 * @return a target dictionary of the kept types and stems with their
+	 * estimated counts
+	 */
+	public synchronized Dictionary toDictionary() {
+		String[] typeTerms = new String[types.size()];
+		long[] typeCounts = new long[types.size()];
+		for (int counter = 0; counter < types.size(); counter++) {
+			typeTerms[counter] = types.getItem(counter);
+			typeCounts[counter] = Math.min(types.getCount(counter), typeSketch.estimate(typeTerms[counter]));
+		}
+		// only the stems of kept types can be keyterms
+		Set<String> typeStems = new HashSet<String>();
+		for (int counter = 0; counter < types.size(); counter++) {
+			typeStems.add(types.getValue(counter));
+		}
+		String[] stemTerms = new String[stems.size()];
+		long[] stemCounts = new long[stems.size()];
+		int n = 0;
+		for (int counter = 0; counter < stems.size(); counter++) {
+			String stem = stems.getItem(counter);
+			if (typeStems.contains(stem)) {
+				stemTerms[n] = stem;
+				stemCounts[n] = Math.min(stems.getCount(counter), stemSketch.estimate(stem));
+				n++;
+			}
+		}
+		return new Dictionary(extractor.getLanguage(), typeTerms, typeCounts, Arrays.copyOf(stemTerms, n), 
+				Arrays.copyOf(stemCounts, n), typeSketch.getTotal());
+	}
+
+	/**
+	 * @return all keyterms of the estimated counts (single words only)
+	 */
+	public Ranking getRanking() {
+		return extractor.rank(toDictionary());
+	}
+
+	/**
+	 * @return the best keyterms in rank order, as many as the extractor is
+	 * configured for
+	 */
+	public Map<String, Double> getKeyness() {
+		return getRanking().top(extractor.getnKeyterms());
+	}
+
+}
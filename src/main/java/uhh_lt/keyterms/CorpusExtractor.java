@@ -0,0 +1,277 @@
+package uhh_lt.keyterms;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Extracts keyterms for every file of a corpus, in parallel against the
+ * comparison dictionary of one shared {@link Extractor}. Results are written
+ * as the files finish, one line per file, either as TSV (path, then
+ * <code>term=keyness</code> columns) or as JSON lines
+ * (<code>{"file": ..., "keyterms": [{"term": ..., "keyness": ...}]}</code>).
+ *
+ * Files listed in an existing output are skipped, so an interrupted run
+ * can be resumed by appending to its output, after cutting off its
+ * unterminated last line with {@link #truncateIncompleteLine(Path)}.
+ */
+public class CorpusExtractor {
+
+	public static final String THREADS_PROPERTY = "keyterms.corpus.threads";
+	public static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+	private final static Logger LOGGER = 
+			Logger.getLogger(Extractor.class.getName());
+
+	private final Extractor extractor;
+	private final int threads;
+	private boolean jsonLines = false;
+
+	public CorpusExtractor(Extractor extractor) {
+		this(extractor, Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+	}
+
+	public CorpusExtractor(Extractor extractor, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be positive");
+		}
+		this.extractor = extractor;
+		this.threads = threads;
+	}
+
+	public boolean isJsonLines() {
+		return jsonLines;
+	}
+
+	public void setJsonLines(boolean jsonLines) {
+		this.jsonLines = jsonLines;
+	}
+
+	/**
+	 * @return the regular files of the given files and directories (walked
+	 * recursively), in path order per directory
+	 */
+	public static List<Path> listFiles(List<Path> inputs) throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		for (Path input : inputs) {
+			if (Files.isDirectory(input)) {
+				final List<Path> found = new ArrayList<Path>();
+				Files.walkFileTree(input, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+						if (attributes.isRegularFile()) {
+							found.add(file);
+						}
+						return FileVisitResult.CONTINUE;
+					}
+				});
+				Collections.sort(found);
+				files.addAll(found);
+			} else {
+				files.add(input);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * @return the paths of the files in the complete lines of an output of
+	 * an earlier run, or an empty set if there is no output yet
+	 */
+	public Set<String> readProcessed(Path output) throws IOException {
+		Set<String> processed = new HashSet<String>();
+		if (!Files.exists(output)) {
+			return processed;
+		}
+		long complete;
+		try (FileChannel channel = FileChannel.open(output, StandardOpenOption.READ)) {
+			complete = completeLength(channel);
+		}
+		// an unterminated last line is the partial result of an interrupted run
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				ByteStreams.limit(Files.newInputStream(output), complete), Charsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) continue;
+				if (jsonLines) {
+					try {
+						Object file = ((Map<?, ?>) Json.parse(line)).get("file");
+						if (file instanceof String) {
+							processed.add((String) file);
+						}
+					} catch (IllegalArgumentException | ClassCastException e) {
+						// a corrupt line, the file is extracted again
+					}
+				} else {
+					int tab = line.indexOf('\t');
+					processed.add(tab < 0 ? line : line.substring(0, tab));
+				}
+			}
+		}
+		return processed;
+	}
+
+	/**
+	 * Cuts off an unterminated last line of an output of an earlier run, so
+	 * that appended lines start on a line of their own.
+	 *
+	 * @return the number of bytes removed
+	 */
+	public static long truncateIncompleteLine(Path output) throws IOException {
+		if (!Files.exists(output)) {
+			return 0;
+		}
+		try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long complete = completeLength(channel);
+			if (complete < size) {
+				channel.truncate(complete);
+			}
+			return size - complete;
+		}
+	}
+
+	// length up to and including the last line feed
+	private static long completeLength(FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long end = channel.size();
+		while (end > 0) {
+			long start = Math.max(0, end - buffer.capacity());
+			buffer.clear();
+			buffer.limit((int) (end - start));
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, start + buffer.position()) < 0) break;
+			}
+			for (int i = buffer.position() - 1; i >= 0; i--) {
+				if (buffer.get(i) == '\n') {
+					return start + i + 1;
+				}
+			}
+			end = start;
+		}
+		return 0;
+	}
+
+	/**
+	 * Extracts from all files and writes one line per file as soon as it is
+	 * done. A file that cannot be read is reported and left out.
+	 *
+	 * @return the number of files written
+	 */
+	public int process(List<Path> files, Writer out) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CompletionService<Result> completion = new ExecutorCompletionService<Result>(executor);
+		// at most two files per thread are read ahead
+		int window = 2 * threads;
+		int submitted = 0;
+		int completed = 0;
+		int written = 0;
+		long bytes = 0;
+		long start = System.nanoTime();
+		long lastReport = start;
+		try {
+			while (completed < files.size()) {
+				while (submitted < files.size() && submitted - completed < window) {
+					final Path file = files.get(submitted++);
+					completion.submit(new Callable<Result>() {
+						@Override
+						public Result call() throws IOException {
+							long size = Files.size(file);
+							TargetCounter counter = extractor.newTargetCounter((int) Math.min(size / 12, 1 << 16));
+							new DocumentReader(extractor.getLanguage()).read(Collections.singletonList(file), counter.chunkHandler());
+							return new Result(file, size, extractor.extractTop(counter, extractor.getnKeyterms()));
+						}
+					});
+				}
+				Result result;
+				try {
+					result = completion.take().get();
+				} catch (ExecutionException e) {
+					LOGGER.log(Level.WARNING, "Could not process file: " + e.getCause());
+					continue;
+				} finally {
+					completed++;
+				}
+				out.write(format(result));
+				out.flush();
+				written++;
+				bytes += result.size;
+				long now = System.nanoTime();
+				if (now - lastReport >= PROGRESS_INTERVAL || completed == files.size()) {
+					lastReport = now;
+					LOGGER.log(Level.INFO, progress(completed, files.size(), bytes, now - start));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		} finally {
+			executor.shutdownNow();
+		}
+		return written;
+	}
+
+	private static String progress(int completed, int total, long bytes, long nanos) {
+		double seconds = Math.max(nanos, 1) / 1e9;
+		return String.format("%d/%d files, %.1f files/s, %.2f MB/s", 
+				completed, total, completed / seconds, bytes / 1e6 / seconds);
+	}
+
+	private String format(Result result) {
+		StringBuilder sb = new StringBuilder();
+		if (jsonLines) {
+			sb.append("{\"file\":");
+			Json.quote(sb, result.file.toString());
+			sb.append(',');
+			Json.appendKeyterms(sb, result.keyterms);
+			sb.append('}');
+		} else {
+			sb.append(result.file);
+			for (Map.Entry<String, Double> keyterm : result.keyterms.entrySet()) {
+				sb.append('\t').append(keyterm.getKey()).append('=').append(keyterm.getValue());
+			}
+		}
+		return sb.append('\n').toString();
+	}
+
+	private static class Result {
+
+		final Path file;
+		final long size;
+		final Map<String, Double> keyterms;
+
+		Result(Path file, long size, Map<String, Double> keyterms) {
+			this.file = file;
+			this.size = size;
+			this.keyterms = keyterms;
+		}
+	}
+
+}
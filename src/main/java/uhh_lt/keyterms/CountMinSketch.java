@@ -0,0 +1,102 @@
+package uhh_lt.keyterms;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Count-Min sketch of string counts in fixed memory (width x depth longs).
+ * An estimate is never lower than the true count and, with probability
+ * 1 - delta, exceeds it by at most epsilon times the total count, for
+ * width = ceil(e / epsilon) and depth = ceil(ln(1 / delta)).
+ * Counts are added with conservative update, which keeps the bound and
+ * lowers the error in practice.
+ */
+public class CountMinSketch {
+
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final int width;
+	private final int depth;
+	private final long[] counts;
+	private long total = 0;
+
+	public CountMinSketch(double epsilon, double delta) {
+		this((int) Math.ceil(Math.E / epsilon), (int) Math.ceil(Math.log(1 / delta)));
+	}
+
+	public CountMinSketch(int width, int depth) {
+		if (width < 1 || depth < 1) {
+			throw new IllegalArgumentException("Width and depth must be positive");
+		}
+		this.width = width;
+		this.depth = depth;
+		this.counts = new long[width * depth];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return the error bound factor, the estimates exceed the counts by at
+	 * most epsilon times {@link #getTotal()} with probability 1 - delta
+	 */
+	public double getEpsilon() {
+		return Math.E / width;
+	}
+
+	public double getDelta() {
+		return Math.exp(-depth);
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	// one cell per row, by double hashing of a 128 bit hash
+	private int[] cells(String item) {
+		long hash = HASH.hashString(item, Charsets.UTF_8).asLong();
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		int[] cells = new int[depth];
+		for (int row = 0; row < depth; row++) {
+			int combined = hash1 + row * hash2;
+			cells[row] = row * width + (combined & Integer.MAX_VALUE) % width;
+		}
+		return cells;
+	}
+
+	/**
+	 * Adds to the count of an item.
+	 *
+	 * @return the new estimate of its count
+	 */
+	public long add(String item, long count) {
+		int[] cells = cells(item);
+		long estimate = Long.MAX_VALUE;
+		for (int cell : cells) {
+			estimate = Math.min(estimate, counts[cell]);
+		}
+		// conservative update: no cell is raised above the new estimate
+		estimate += count;
+		for (int cell : cells) {
+			counts[cell] = Math.max(counts[cell], estimate);
+		}
+		total += count;
+		return estimate;
+	}
+
+	public long estimate(String item) {
+		long estimate = Long.MAX_VALUE;
+		for (int cell : cells(item)) {
+			estimate = Math.min(estimate, counts[cell]);
+		}
+		return estimate;
+	}
+
+}
@@ -2,9 +2,6 @@ package uhh_lt.keyterms;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import com.google.common.collect.Multiset.Entry;
-import com.google.common.collect.Multisets;
-import com.google.common.collect.TreeMultiset;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
@@ -12,35 +9,46 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.PriorityQueue;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Dictionary {
 
 	public static final int MAX_TYPE_LENGTH = 50;
 	public static final int STOP_WORD_RANK = 500;
+
+	// expanded stopword files by dictionary language and list
+	private static final ConcurrentHashMap<String, String[]> STOPWORD_FILES = new ConcurrentHashMap<String, String[]>();
+	private static final String[] NO_STOPWORD_FILE = new String[0];
 	private final static Logger LOGGER = 
 			Logger.getLogger(Extractor.class.getName());
+	private static final AtomicLong INSTANCES = new AtomicLong();
 
+	// identifies the dictionary, e.g. in cache keys, without referencing it
+	private final long instanceId = INSTANCES.incrementAndGet();
 	private Long totalCounts;
-	private SortedSet<String> stopwords;
-	private HashMap<String, String> stemTypeMapping;
 	private StemmerWrapper stemmer;
 
-	private TreeMultiset<String> typeFrequencies;
-	private TreeMultiset<String> stemFrequencies;
+	// types, stems and stopwords by term id, on the heap, off the heap or compiled
+	private TermStore store;
+	private TermTable table;
 	private String language;
+	private volatile boolean readOnly = false;
 
 
 
 	public Dictionary(String language) {
-		this(new File("wordlists/" + language + ".tsv"), language, true);
+		this(getInternalResource(language), language, true);
 	}
 	
 
@@ -50,8 +58,7 @@ public class Dictionary {
 	
 	public Dictionary(File resourceFile, String language, boolean loadInternal) {
 		this.language = language;
-		stemmer = new StemmerWrapper(language);
-		stopwords = new TreeSet<String>();
+		stemmer = StemmerWrapper.forLanguage(language);
 		try {
 			createFromDictionaryFile(resourceFile, loadInternal);
 		} catch (IOException e) {
@@ -60,30 +67,156 @@ public class Dictionary {
 		}
 	}
 
+	private Dictionary(String language, StemmerWrapper stemmer) {
+		this.language = language;
+		this.stemmer = stemmer;
+	}
+
+	/**
+	 * Loads a reference like {@link #Dictionary(File, String, boolean)}, but
+	 * fails with an exception instead of exiting, e.g. in a server.
+	 *
+	 * @param resourceFile the reference file, or null for the internal
+	 * resource of the language
+	 */
+	static Dictionary load(String language, File resourceFile) throws IOException {
+		Dictionary dictionary = new Dictionary(language, StemmerWrapper.forLanguage(language));
+		if (resourceFile == null) {
+			dictionary.createFromDictionaryFile(getInternalResource(language), true);
+		} else {
+			dictionary.createFromDictionaryFile(resourceFile, false);
+		}
+		return dictionary;
+	}
+
+	private static File getInternalResource(String language) {
+		return new File("wordlists/" + language + ".tsv");
+	}
+
+	/**
+	 * Creates the dictionary from merged reference lists, without writing
+	 * them to a file first.
+	 *
+	 * @see ReferenceMerger#toDictionary(String)
+	 */
+	Dictionary(String language, ReferenceMerger reference) throws IOException {
+		this.language = language;
+		stemmer = StemmerWrapper.forLanguage(language);
+		table = new TermTable(1 << 18);
+		store = table;
+		totalCounts = 0L;
+		reference.merge(new SortedRuns.Handler() {
+			@Override
+			public void entry(String type, long count) {
+				addReferenceCount(type, count);
+			}
+		});
+		addStopwords();
+		moveOffHeap();
+	}
+
+	/**
+	 * Creates a target dictionary from type and stem counts, e.g. estimated
+	 * ones (see {@link ApproximateCounter}).
+	 */
+	Dictionary(String language, String[] types, long[] typeCounts, String[] stems, long[] stemCounts, long totalCounts) {
+		this.language = language;
+		stemmer = StemmerWrapper.forLanguage(language);
+		table = new TermTable(Math.max(16, types.length + stems.length));
+		store = table;
+		for (int i = 0; i < stems.length; i++) {
+			table.addStem(table.add(stems[i]), stemCounts[i]);
+		}
+		for (int i = 0; i < types.length; i++) {
+			table.addType(table.add(types[i]), typeCounts[i]);
+		}
+		this.totalCounts = totalCounts;
+		createStemTypeMapping();
+	}
+
+	/**
+	 * Creates a target dictionary from the counts of a {@link TargetCounter};
+	 * typeStems holds the stem of each type by id.
+	 */
+	Dictionary(String language, TermTable table, long totalCounts, String[] typeStems) {
+		this.language = language;
+		stemmer = StemmerWrapper.forLanguage(language);
+		this.table = table;
+		store = table;
+		this.totalCounts = totalCounts;
+		createStemTypeMapping(typeStems);
+	}
+
 	public Dictionary(String language, Document document) {
 		this.language = language;
-		stemmer = new StemmerWrapper(language);
-		stopwords = new TreeSet<String>();
+		stemmer = StemmerWrapper.forLanguage(language);
 		createFromDocument(document);
 	}
 
+	long getInstanceId() {
+		return instanceId;
+	}
+
+	public void setReadOnly() {
+		this.readOnly = true;
+	}
+
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	private void checkWritable() {
+		if (readOnly) {
+			throw new IllegalStateException("Dictionary is read-only");
+		}
+	}
+
 	public void createFromDocument(Document document) {
+		checkWritable();
 		countVocabulary(document);
 		createStemTypeMapping();
 	}
 
 	public void createFromDictionaryFile(File resourceFile, boolean loadInternal) throws IOException {
+		checkWritable();
+		File compiledFile = loadInternal ? getCompiledResource(this.language) : resourceFile;
+		if (compiledFile != null && DictionaryFile.isDictionaryFile(compiledFile)) {
+			DictionaryFile compiled = DictionaryFile.open(compiledFile);
+			this.store = compiled;
+			this.table = null;
+			this.totalCounts = compiled.getTotalCounts();
+			return;
+		}
 		if (loadInternal) {
 			loadDictionaryFile(getResourceStream(resourceFile));
 		} else {
 			loadDictionaryFile(getFileStream(resourceFile));
 		}
-		
-		this.stopwords = createStopwordList(this.language);
-		this.stopwords.addAll(createStopwordList("all"));
+		addStopwords();
+		moveOffHeap();
 	}
 
-	private String clean(String type) {
+	// keeps a reference in direct memory, if configured (see OffHeapTermStore)
+	private void moveOffHeap() {
+		if (Boolean.getBoolean(OffHeapTermStore.PROPERTY)) {
+			OffHeapTermStore offHeap = OffHeapTermStore.copyOf(table, Integer.getInteger(OffHeapTermStore.BLOOM_PROPERTY, 0));
+			LOGGER.log(Level.INFO, "Moved " + this.language + " reference off the heap: " + offHeap.size() + " terms, " 
+					+ (offHeap.getOffHeapSize() >> 10) + " KB");
+			this.store = offHeap;
+			this.table = null;
+		}
+	}
+
+	private void addStopwords() {
+		TreeSet<String> stopwords = new TreeSet<String>();
+		addStopwordList(stopwords, this.language);
+		addStopwordList(stopwords, "all");
+		for (String stopword : stopwords) {
+			table.addStopword(table.add(stopword));
+		}
+	}
+
+	static String clean(String type) {
 		if (type.length() > MAX_TYPE_LENGTH) {
 			return "";
 		} else {
@@ -97,8 +230,9 @@ public class Dictionary {
 
 	public void countVocabulary(Document document) {
 
-		stemFrequencies = TreeMultiset.create();
-		typeFrequencies = TreeMultiset.create();
+		checkWritable();
+		table = new TermTable(Math.max(16, document.size() / 2));
+		store = table;
 
 		// count types
 		totalCounts = 0L;
@@ -107,49 +241,104 @@ public class Dictionary {
 			String type = clean(token.getValue());
 			if (!type.isEmpty()) {
 				String stem = clean(token.getStem());
-				stemFrequencies.add(stem);
-				typeFrequencies.add(type);
+				table.addStem(table.add(stem), 1);
+				table.addType(table.add(type), 1);
 				totalCounts++;
 			}
+			// every token stem gets an id, see Document.getStemIds
+			table.add(token.getStem());
 
 		}
 
 	}
 
-	private TreeSet<String> createStopwordList(String langCode) {
-		
-		TreeSet<String> stopwords = new TreeSet<String>();
-		
+	private void addStopwordList(SortedSet<String> stopwords, String langCode) {
+		String[] expanded = getStopwordFile(langCode);
+		if (expanded != null) {
+			Collections.addAll(stopwords, expanded);
+			return;
+		}
+		// use top ranks of reference file, if no stopword file is present
+		for (int id : getMostFrequentTypes(STOP_WORD_RANK)) {
+			String stopword = table.getTerm(id);
+			if (Character.isLowerCase(stopword.charAt(0))) {
+				addToStopwordList(stopwords, stopword);
+			}
+		}
+	}
+
+	/**
+	 * @return the stopword file of a language, expanded by capitalized variants
+	 * and stems (read once per dictionary language), or null if there is none
+	 */
+	private String[] getStopwordFile(String langCode) {
+		String key = this.language + "/" + langCode;
+		String[] expanded = STOPWORD_FILES.get(key);
+		if (expanded == null) {
+			expanded = readStopwordFile(langCode);
+			String[] existing = STOPWORD_FILES.putIfAbsent(key, expanded);
+			if (existing != null) expanded = existing;
+		}
+		return expanded == NO_STOPWORD_FILE ? null : expanded;
+	}
+
+	private String[] readStopwordFile(String langCode) {
+		String filePath = langCode + ".stopwords";
+		InputStream stream;
 		try {
-			
-			// try reading stopword list from file system
-			String filePath = "wordlists/" + langCode + ".stopwords";
-			InputStream stream = getClass().getClassLoader().getResourceAsStream(filePath);
-			BufferedReader br = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+			stream = Resources.open(filePath);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Could not read stopword list: " + filePath);
+			return NO_STOPWORD_FILE;
+		}
+		if (stream == null) {
+			return NO_STOPWORD_FILE;
+		}
+		TreeSet<String> stopwords = new TreeSet<String>();
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(stream, "UTF-8"))) {
 			String stopword;
 			while ((stopword = br.readLine()) != null) {
 				addToStopwordList(stopwords, stopword.trim());
 			}
-		
 		} catch (Exception e) {
-			
-			// use top ranks of reference file, if no stopword file is present
-			Iterable<Entry<String>> vocabSorted = 
-					Multisets.copyHighestCountFirst(typeFrequencies).entrySet();
-
-			// identify stop words (most frequent terms)
-			int swCount = 0;
-			for (Entry<String> entry : vocabSorted) {
-				String stopword = entry.getElement();
-				if (++swCount > STOP_WORD_RANK) break;
-				if (Character.isLowerCase(stopword.charAt(0))) {
-					addToStopwordList(stopwords, stopword);
-				}			
+			LOGGER.log(Level.WARNING, "Could not read stopword list: " + filePath);
+			return NO_STOPWORD_FILE;
+		}
+		return stopwords.toArray(new String[stopwords.size()]);
+	}
+
+	/**
+	 * @return the ids of the k most frequent types (highest count first, ties
+	 * in alphabetical order), selected with a bounded heap instead of sorting
+	 * all types
+	 */
+	private int[] getMostFrequentTypes(int k) {
+		final Comparator<Integer> rank = new Comparator<Integer>() {
+			@Override
+			public int compare(Integer id1, Integer id2) {
+				// highest count first, ties in alphabetical order
+				int cmp = Long.compare(table.getTypeFrequency(id2), table.getTypeFrequency(id1));
+				return cmp != 0 ? cmp : table.getTerm(id1).compareTo(table.getTerm(id2));
+			}
+		};
+		// the worst of the best k types at the head
+		PriorityQueue<Integer> heap = new PriorityQueue<Integer>(Math.max(1, k), Collections.reverseOrder(rank));
+		for (int id = 0; id < table.size() && k > 0; id++) {
+			if (table.getTypeFrequency(id) == 0) continue;
+			if (heap.size() < k) {
+				heap.add(id);
+			} else if (rank.compare(id, heap.peek()) < 0) {
+				heap.poll();
+				heap.add(id);
 			}
 		}
-		return stopwords;
+		int[] ids = new int[heap.size()];
+		for (int i = ids.length - 1; i >= 0; i--) {
+			ids[i] = heap.poll();
+		}
+		return ids;
 	}
-	
+
 	private void addToStopwordList(SortedSet<String> stopwords, String stopword) {
 		String variant = Character.toString(stopword.charAt(0)).toUpperCase() + stopword.substring(1);
 		// add full word type
@@ -162,23 +351,57 @@ public class Dictionary {
 
 
 	public boolean isStopword(String type) {
-		return stopwords.contains(type);
+		return store.isStopword(store.getId(type));
 	}
 
 	public Long getTypeFrequency(String type) {
-		return Integer.toUnsignedLong(typeFrequencies.count(type));
+		return store.getTypeFrequency(store.getId(type));
 	}
 
 	public Long getStemFrequency(String stem) {
-		return Integer.toUnsignedLong(stemFrequencies.count(stem));
+		return store.getStemFrequency(store.getId(stem));
+	}
+
+	// id based access
+
+	public int size() {
+		return store.size();
+	}
+
+	public int getId(String term) {
+		return store.getId(term);
+	}
+
+	public String getTerm(int id) {
+		return store.getTerm(id);
+	}
+
+	public boolean isStopword(int id) {
+		return store.isStopword(id);
+	}
+
+	public long getTypeFrequency(int id) {
+		return store.getTypeFrequency(id);
+	}
+
+	public long getStemFrequency(int id) {
+		return store.getStemFrequency(id);
+	}
+
+	/**
+	 * @return id of the type representing the stem, or the stem id itself
+	 */
+	public int getTypeFromStem(int id) {
+		int typeId = store.getStemType(id);
+		return typeId < 0 ? id : typeId;
 	}
 
 	public Set<String> getStemVocabulary() {
-		return stemFrequencies.elementSet();
+		return TermSet.stems(store);
 	}
 	
 	public Set<String> getTypeVocabulary() {
-		return typeFrequencies.elementSet();
+		return TermSet.types(store);
 	}
 	
 	public TreeMap<String, Long> getTypeFrequencies() {
@@ -189,11 +412,29 @@ public class Dictionary {
 		return sortMapByValue(counts);
 	}
 
+	/**
+	 * @return estimated size in bytes on the heap: the strings, the hash
+	 * table and the count arrays of a dictionary on the heap, only the
+	 * object itself for a compiled or off-heap dictionary
+	 */
+	public long estimateHeapSize() {
+		return 64 + store.estimateHeapSize();
+	}
+
+	/**
+	 * @return size in bytes of the direct buffer of an off-heap dictionary
+	 * or the mapped file of a compiled one, 0 for a dictionary on the heap
+	 */
+	public long getOffHeapSize() {
+		return store.getOffHeapSize();
+	}
+
 	public Long getTotalCounts() {
 		return totalCounts;
 	}
 
 	public void setTotalCounts(Long totalCounts) {
+		checkWritable();
 		this.totalCounts = totalCounts;
 	}
 
@@ -201,20 +442,44 @@ public class Dictionary {
 	//		return stemFrequencies.keySet();
 	//	}
 
+	// null for a compiled dictionary, which holds the mapping by id
+	Map<String, String> getStemTypeMapping() {
+		return store instanceof DictionaryFile ? null : buildStemTypeMapping(null);
+	}
+
 	private void createStemTypeMapping() {
+		createStemTypeMapping(null);
+	}
 
-		stemTypeMapping = new HashMap<String, String>();
+	private void createStemTypeMapping(String[] typeStems) {
+		for (Map.Entry<String, String> entry : buildStemTypeMapping(typeStems).entrySet()) {
+			table.setStemType(table.add(entry.getKey()), table.getId(entry.getValue()));
+		}
+	}
+
+	// typeStems: the stems of the types by id, if they are known already
+	private HashMap<String, String> buildStemTypeMapping(String[] typeStems) {
+
+		HashMap<String, String> stemTypeMapping = new HashMap<String, String>();
 
 		// get all type variants per stem
 		HashMap<String, HashSet<String>> stems =  new HashMap<String, HashSet<String>>();
-		for (String type : typeFrequencies.elementSet()) {
-			String stem = stemmer.stem(type);
+		for (String type : getTypeVocabulary()) {
+			String stem = null;
+			if (typeStems != null) {
+				int id = table.getId(type);
+				stem = id < typeStems.length ? typeStems[id] : null;
+			}
+			if (stem == null) {
+				stem = stemmer.stem(type);
+			}
 			HashSet<String> typeSet = stems.containsKey(stem) ? stems.get(stem) : new HashSet<String>();
 			typeSet.add(type);
 			stems.put(stem, typeSet);
 		}
 
-		// collect best stem-type pair (best = most lemma like)
+		// collect best stem-type pair (best = most lemma like: shortest, then
+		// most frequent, then alphabetically first)
 		for (Map.Entry<String, HashSet<String>> entry : stems.entrySet()) {
 			String shortestType = "";
 			Integer shortestTypeLength = Integer.MAX_VALUE;
@@ -224,7 +489,8 @@ public class Dictionary {
 					shortestTypeLength = type.length();
 					shortestType = type;
 				} else if (type.length() == shortestTypeLength) {
-					if (typeFrequencies.count(type) > typeFrequencies.count(shortestType)) {
+					long cmp = getTypeFrequency(type) - getTypeFrequency(shortestType);
+					if (cmp > 0 || (cmp == 0 && type.compareTo(shortestType) < 0)) {
 						shortestTypeLength = type.length();
 						shortestType = type;
 					}
@@ -233,11 +499,23 @@ public class Dictionary {
 			stemTypeMapping.put(entry.getKey(), shortestType);
 		}
 
+		return stemTypeMapping;
 	}
 
 	
-	private InputStream getResourceStream(File file) {
-		return getClass().getClassLoader().getResourceAsStream(file.getPath());
+	private static File getCompiledResource(String language) {
+		// prefer a compiled dictionary, if a directory of compiled dictionaries is configured
+		String compiledDirectory = System.getProperty(DictionaryFile.DIRECTORY_PROPERTY);
+		return compiledDirectory == null ? null : new File(compiledDirectory, language + DictionaryFile.EXTENSION);
+	}
+
+	private InputStream getResourceStream(File file) throws IOException {
+		InputStream stream = Resources.open(file.getName());
+		if (stream == null) {
+			throw new IOException("Reference resource not found: " + file.getName() 
+					+ " (see " + Resources.DIRECTORY_PROPERTY + ")");
+		}
+		return stream;
 	}
 	
 	private InputStream getFileStream(File file) throws IOException {
@@ -254,8 +532,8 @@ public class Dictionary {
 
 	private void loadDictionaryFile(InputStream stream) throws IOException {
 
-		stemFrequencies = TreeMultiset.create();
-		typeFrequencies = TreeMultiset.create();
+		table = new TermTable(1 << 18);
+		store = table;
 
 		int lineCounter = 0;
 		totalCounts = 0L;
@@ -267,9 +545,7 @@ public class Dictionary {
 				String[] entry = line.split("\t");
 				if (entry.length == 2) {
 
-					typeFrequencies.add(entry[0], Integer.parseInt(entry[1]));
-					stemFrequencies.add(stemmer.stem(entry[0]), Integer.parseInt(entry[1]));
-					totalCounts += Long.parseLong(entry[1]);
+					addReferenceCount(entry[0], Long.parseLong(entry[1]));
 
 				} else {
 					LOGGER.log(Level.SEVERE, "Invalid reference file format at line: " + lineCounter);
@@ -281,8 +557,15 @@ public class Dictionary {
 	}
 
 
+	private void addReferenceCount(String type, long count) {
+		table.addType(table.add(type), count);
+		table.addStem(table.add(stemmer.stem(type)), count);
+		totalCounts += count;
+	}
+
 	public String getTypeFromStem(String stem) {
-		return stemTypeMapping.containsKey(stem) ? stemTypeMapping.get(stem) : stem;
+		int typeId = store.getStemType(store.getId(stem));
+		return typeId < 0 ? stem : store.getTerm(typeId);
 	}
 
 	static class LongValueComparator implements Comparator<String>{
@@ -309,7 +592,7 @@ public class Dictionary {
 
 
 	public SortedSet<String> getStopwords() {
-		return this.stopwords;
+		return Collections.unmodifiableSortedSet(TermSet.stopwords(store));
 	}
 
 }
@@ -0,0 +1,376 @@
+package uhh_lt.keyterms;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compiled, memory-mapped reference dictionary.
+ *
+ * All terms of a reference resource (types, stems and expanded stopwords)
+ * are stored in one table sorted by their UTF-8 bytes. A term is found by
+ * binary search; its id is its position in the table. Nothing is parsed
+ * when the file is opened.
+ *
+ * <pre>
+ * int    magic ("LTKD")
+ * int    version
+ * long   total counts
+ * int    number of terms (n)
+ * int    number of types
+ * int    number of stems
+ * int    number of stopwords
+ * short  language length, followed by the UTF-8 language code
+ * int[]  n + 1 key offsets (relative to the key section)
+ * long[] n type counts
+ * long[] n stem counts
+ * int[]  n stem-to-type ids (-1 if the term is no stem)
+ * byte[] (n + 7) / 8 stopword flags
+ * byte[] UTF-8 keys
+ * </pre>
+ */
+public class DictionaryFile implements TermStore {
+
+	public static final int MAGIC = 0x4C544B44;
+	public static final int VERSION = 1;
+	public static final String EXTENSION = ".ltkd";
+	public static final String DIRECTORY_PROPERTY = "keyterms.dictionaries";
+
+	private final static Logger LOGGER =
+			Logger.getLogger(Extractor.class.getName());
+
+	private final ByteBuffer buffer;
+	private final String language;
+	private final long totalCounts;
+	private final int size;
+	private final int nTypes;
+	private final int nStems;
+	private final int nStopwords;
+
+	private final int offsetsPosition;
+	private final int typeCountsPosition;
+	private final int stemCountsPosition;
+	private final int stemTypesPosition;
+	private final int stopwordsPosition;
+	private final int keysPosition;
+
+	private DictionaryFile(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a compiled dictionary file");
+		}
+		int version = buffer.getInt(4);
+		if (version != VERSION) {
+			throw new IOException("Unsupported compiled dictionary version: " + version);
+		}
+		this.totalCounts = buffer.getLong(8);
+		this.size = buffer.getInt(16);
+		this.nTypes = buffer.getInt(20);
+		this.nStems = buffer.getInt(24);
+		this.nStopwords = buffer.getInt(28);
+		int languageLength = buffer.getShort(32);
+		byte[] languageBytes = new byte[languageLength];
+		for (int i = 0; i < languageLength; i++) {
+			languageBytes[i] = buffer.get(34 + i);
+		}
+		this.language = new String(languageBytes, StandardCharsets.UTF_8);
+
+		this.offsetsPosition = 34 + languageLength;
+		this.typeCountsPosition = offsetsPosition + 4 * (size + 1);
+		this.stemCountsPosition = typeCountsPosition + 8 * size;
+		this.stemTypesPosition = stemCountsPosition + 8 * size;
+		this.stopwordsPosition = stemTypesPosition + 4 * size;
+		this.keysPosition = stopwordsPosition + (size + 7) / 8;
+		if (keysPosition + buffer.getInt(offsetsPosition + 4 * size) > buffer.capacity()) {
+			throw new IOException("Compiled dictionary file is truncated");
+		}
+	}
+
+	public static DictionaryFile open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			LOGGER.log(Level.INFO, "Mapped compiled dictionary: " + file.getPath());
+			return new DictionaryFile(buffer);
+		}
+	}
+
+	public static boolean isDictionaryFile(File file) {
+		if (!file.isFile()) return false;
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public String getLanguage() {
+		return language;
+	}
+
+	public long getTotalCounts() {
+		return totalCounts;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public long estimateHeapSize() {
+		// the fields and the buffer object, the file is mapped
+		return 128;
+	}
+
+	@Override
+	public long getOffHeapSize() {
+		return buffer.capacity();
+	}
+
+	@Override
+	public int getId(String term) {
+		byte[] key = term.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareKey(mid, key);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private int compareKey(int id, byte[] key) {
+		int start = keysPosition + buffer.getInt(offsetsPosition + 4 * id);
+		int end = keysPosition + buffer.getInt(offsetsPosition + 4 * (id + 1));
+		int length = Math.min(end - start, key.length);
+		for (int i = 0; i < length; i++) {
+			int cmp = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+			if (cmp != 0) return cmp;
+		}
+		return (end - start) - key.length;
+	}
+
+	@Override
+	public String getTerm(int id) {
+		int start = keysPosition + buffer.getInt(offsetsPosition + 4 * id);
+		int end = keysPosition + buffer.getInt(offsetsPosition + 4 * (id + 1));
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public long getTypeFrequency(int id) {
+		return id < 0 ? 0 : buffer.getLong(typeCountsPosition + 8 * id);
+	}
+
+	@Override
+	public long getStemFrequency(int id) {
+		return id < 0 ? 0 : buffer.getLong(stemCountsPosition + 8 * id);
+	}
+
+	@Override
+	public int getStemType(int id) {
+		return id < 0 ? -1 : buffer.getInt(stemTypesPosition + 4 * id);
+	}
+
+	@Override
+	public boolean isStopword(int id) {
+		return id >= 0 && (buffer.get(stopwordsPosition + (id >>> 3)) & (1 << (id & 7))) != 0;
+	}
+
+	@Override
+	public int getTypeCount() {
+		return nTypes;
+	}
+
+	@Override
+	public int getStemCount() {
+		return nStems;
+	}
+
+	@Override
+	public int getStopwordCount() {
+		return nStopwords;
+	}
+
+	// compilation
+
+	private static final Comparator<byte[]> UNSIGNED_BYTES = new Comparator<byte[]>() {
+		@Override
+		public int compare(byte[] a, byte[] b) {
+			int length = Math.min(a.length, b.length);
+			for (int i = 0; i < length; i++) {
+				int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+				if (cmp != 0) return cmp;
+			}
+			return a.length - b.length;
+		}
+	};
+
+	/**
+	 * Compiles internal reference resources into a directory, e.g. at build
+	 * time (profile compile-dictionaries). The arguments are the output
+	 * directory and languages; a directory argument stands for the languages
+	 * of all its .tsv files.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: DictionaryFile <output directory> <language or wordlist directory> ...");
+			System.exit(1);
+		}
+		File directory = new File(args[0]);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create directory: " + directory);
+		}
+		List<String> languages = new ArrayList<String>();
+		for (int i = 1; i < args.length; i++) {
+			File wordlists = new File(args[i]);
+			if (wordlists.isDirectory()) {
+				String[] files = wordlists.list();
+				Arrays.sort(files);
+				for (String file : files) {
+					if (file.endsWith(".tsv")) languages.add(file.substring(0, file.length() - 4));
+				}
+			} else {
+				languages.add(args[i]);
+			}
+		}
+		for (String language : languages) {
+			File file = new File(directory, language + EXTENSION);
+			write(new Dictionary(language), language, file);
+			LOGGER.log(Level.INFO, "Compiled dictionary: " + file.getPath());
+		}
+	}
+
+	public static void write(Dictionary dictionary, String language, File file) throws IOException {
+
+		Map<String, String> stemTypeMapping = dictionary.getStemTypeMapping();
+
+		// collect all terms (types, stems and stopwords) in one table sorted by UTF-8 bytes
+		List<Integer> sourceIds = new ArrayList<Integer>();
+		final Map<Integer, byte[]> keys = new HashMap<Integer, byte[]>();
+		for (int id = 0; id < dictionary.size(); id++) {
+			if (dictionary.getTypeFrequency(id) > 0 || dictionary.getStemFrequency(id) > 0 || dictionary.isStopword(id)) {
+				sourceIds.add(id);
+				keys.put(id, dictionary.getTerm(id).getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		Collections.sort(sourceIds, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer id1, Integer id2) {
+				return UNSIGNED_BYTES.compare(keys.get(id1), keys.get(id2));
+			}
+		});
+
+		// drop terms which are not distinguishable in UTF-8 (e.g. unpaired surrogates)
+		List<Integer> table = new ArrayList<Integer>(sourceIds.size());
+		byte[] previous = null;
+		for (Integer sourceId : sourceIds) {
+			if (previous != null && Arrays.equals(previous, keys.get(sourceId))) {
+				LOGGER.log(Level.WARNING, "Skipping ambiguous term: " + dictionary.getTerm(sourceId));
+				continue;
+			}
+			table.add(sourceId);
+			previous = keys.get(sourceId);
+		}
+
+		int n = table.size();
+		Map<String, Integer> ids = new HashMap<String, Integer>(n * 2);
+		for (int id = 0; id < n; id++) {
+			ids.put(dictionary.getTerm(table.get(id)), id);
+		}
+
+		int nTypes = 0;
+		int nStems = 0;
+		int nStopwords = 0;
+		long[] typeCounts = new long[n];
+		long[] stemCounts = new long[n];
+		int[] stemTypes = new int[n];
+		byte[] stopwordFlags = new byte[(n + 7) / 8];
+		for (int id = 0; id < n; id++) {
+			int sourceId = table.get(id);
+			String term = dictionary.getTerm(sourceId);
+			typeCounts[id] = dictionary.getTypeFrequency(sourceId);
+			stemCounts[id] = dictionary.getStemFrequency(sourceId);
+			if (typeCounts[id] > 0) nTypes++;
+			stemTypes[id] = -1;
+			if (stemCounts[id] > 0) {
+				nStems++;
+				String type;
+				if (stemTypeMapping == null) {
+					type = dictionary.getTerm(dictionary.getTypeFromStem(sourceId));
+				} else {
+					type = stemTypeMapping.containsKey(term) ? stemTypeMapping.get(term) : term;
+				}
+				Integer typeId = ids.get(type);
+				if (typeId != null) stemTypes[id] = typeId;
+			}
+			if (dictionary.isStopword(sourceId)) {
+				nStopwords++;
+				stopwordFlags[id >>> 3] |= 1 << (id & 7);
+			}
+		}
+
+		byte[] languageBytes = language.getBytes(StandardCharsets.UTF_8);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(dictionary.getTotalCounts());
+			out.writeInt(n);
+			out.writeInt(nTypes);
+			out.writeInt(nStems);
+			out.writeInt(nStopwords);
+			out.writeShort(languageBytes.length);
+			out.write(languageBytes);
+			int offset = 0;
+			out.writeInt(offset);
+			for (int id = 0; id < n; id++) {
+				offset += keys.get(table.get(id)).length;
+				out.writeInt(offset);
+			}
+			for (int id = 0; id < n; id++) {
+				out.writeLong(typeCounts[id]);
+			}
+			for (int id = 0; id < n; id++) {
+				out.writeLong(stemCounts[id]);
+			}
+			for (int id = 0; id < n; id++) {
+				out.writeInt(stemTypes[id]);
+			}
+			out.write(stopwordFlags);
+			for (int id = 0; id < n; id++) {
+				out.write(keys.get(table.get(id)));
+			}
+		}
+		LOGGER.log(Level.INFO, "Compiled dictionary with " + n + " terms: " + file.getPath());
+	}
+
+}
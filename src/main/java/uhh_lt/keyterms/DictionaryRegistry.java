@@ -0,0 +1,179 @@
+package uhh_lt.keyterms;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Process-wide registry of shared comparison dictionaries.
+ *
+ * Dictionaries are loaded lazily on first request, once per language and
+ * reference file, and are handed out to all callers. Least recently used
+ * dictionaries are evicted when their estimated heap size exceeds the
+ * heap budget. Dictionaries obtained from the registry are read-only.
+ */
+public class DictionaryRegistry {
+
+	public static final String HEAP_BUDGET_PROPERTY = "keyterms.registry.budget";
+
+	private final static Logger LOGGER =
+			Logger.getLogger(Extractor.class.getName());
+
+	private static DictionaryRegistry shared;
+
+	private final long heapBudget;
+	private final LoadingCache<Key, Dictionary> dictionaries;
+
+	public DictionaryRegistry(long heapBudget) {
+		this.heapBudget = heapBudget;
+		// a single segment, so that the whole budget is available to one dictionary
+		this.dictionaries = CacheBuilder.newBuilder()
+				.concurrencyLevel(1)
+				.maximumWeight(Math.max(1, heapBudget / 1024))
+				.weigher(new Weigher<Key, Dictionary>() {
+					@Override
+					public int weigh(Key key, Dictionary dictionary) {
+						// weight in KB
+						return (int) Math.min(Integer.MAX_VALUE, dictionary.estimateHeapSize() / 1024);
+					}
+				})
+				.removalListener(new RemovalListener<Key, Dictionary>() {
+					@Override
+					public void onRemoval(RemovalNotification<Key, Dictionary> notification) {
+						if (notification.wasEvicted()) {
+							LOGGER.log(Level.INFO, "Evicted reference dictionary: " + notification.getKey());
+						}
+					}
+				})
+				.recordStats()
+				.build(new CacheLoader<Key, Dictionary>() {
+					@Override
+					public Dictionary load(Key key) throws IOException {
+						LOGGER.log(Level.INFO, "Loading reference dictionary: " + key);
+						Dictionary dictionary = Dictionary.load(key.language, key.referenceFile);
+						dictionary.setReadOnly();
+						return dictionary;
+					}
+				});
+	}
+
+	public static synchronized DictionaryRegistry getShared() {
+		if (shared == null) {
+			shared = new DictionaryRegistry(getDefaultHeapBudget());
+		}
+		return shared;
+	}
+
+	private static long getDefaultHeapBudget() {
+		// heap budget in MB, defaults to half of the maximum heap
+		String budget = System.getProperty(HEAP_BUDGET_PROPERTY);
+		if (budget != null) {
+			return Long.parseLong(budget) * 1024 * 1024;
+		}
+		return Runtime.getRuntime().maxMemory() / 2;
+	}
+
+	public Dictionary get(String language) {
+		return get(language, null);
+	}
+
+	public Dictionary get(String language, File referenceFile) {
+		try {
+			return dictionaries.get(new Key(language, referenceFile));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw new IllegalStateException("Could not load reference dictionary for " + language, e.getCause());
+		}
+	}
+
+	public void invalidateAll() {
+		dictionaries.invalidateAll();
+	}
+
+	public long getHeapBudget() {
+		return heapBudget;
+	}
+
+	public long size() {
+		return dictionaries.size();
+	}
+
+	/**
+	 * @return estimated heap size in bytes of the loaded dictionaries
+	 */
+	public long getHeapSize() {
+		long size = 0;
+		for (Dictionary dictionary : dictionaries.asMap().values()) {
+			size += dictionary.estimateHeapSize();
+		}
+		return size;
+	}
+
+	/**
+	 * @return size in bytes of the loaded dictionaries outside the heap,
+	 * which does not count against the heap budget
+	 */
+	public long getOffHeapSize() {
+		long size = 0;
+		for (Dictionary dictionary : dictionaries.asMap().values()) {
+			size += dictionary.getOffHeapSize();
+		}
+		return size;
+	}
+
+	public long getHitCount() {
+		return dictionaries.stats().hitCount();
+	}
+
+	public long getMissCount() {
+		return dictionaries.stats().missCount();
+	}
+
+	public long getEvictionCount() {
+		return dictionaries.stats().evictionCount();
+	}
+
+	public CacheStats getStats() {
+		return dictionaries.stats();
+	}
+
+	private static class Key {
+
+		private final String language;
+		private final File referenceFile;
+
+		Key(String language, File referenceFile) {
+			this.language = language;
+			this.referenceFile = referenceFile == null ? null : referenceFile.getAbsoluteFile();
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(language, referenceFile);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key) obj;
+			return Objects.equal(language, other.language) && Objects.equal(referenceFile, other.referenceFile);
+		}
+
+		@Override
+		public String toString() {
+			return referenceFile == null ? language : language + " (" + referenceFile.getPath() + ")";
+		}
+	}
+
+}
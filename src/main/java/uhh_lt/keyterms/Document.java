@@ -28,18 +28,29 @@ public class Document extends ArrayList<Token> {
 	private final static Logger LOGGER = 
 			Logger.getLogger(Extractor.class.getName());
 
-	Pattern wordbounds = Pattern.compile(
+	private static final Pattern WORDBOUNDS = Pattern.compile(
 			"[\\w]+|[^\\w]",
 			Pattern.UNICODE_CHARACTER_CLASS
 			);
 
+	private static final Pattern PARAGRAPHS = Pattern.compile(
+			"(\\r\\n|\\r|\\n){2,}",
+			Pattern.DOTALL
+			);
+
+	private static final Map<String, Locale> ISO3_LOCALES = getIso2LocaleMap();
+
 	private String language;
 	private StemmerWrapper stemmer;
 
+	// time spent loading, see ExtractionListener
+	private long tokenizeNanos = 0;
+	private long stemNanos = 0;
+
 	public Document(String language) {
 		super();
 		this.language = language;
-		stemmer = new StemmerWrapper(language);
+		stemmer = StemmerWrapper.forLanguage(language);
 	}
 
 
@@ -71,15 +82,54 @@ public class Document extends ArrayList<Token> {
 
 
 	public void load(String text) {
-		load(tokenize(text));
+		load(text, new Vocabulary());
+	}
+
+	/**
+	 * Appends the tokens of a text, e.g. of one chunk of a longer input.
+	 * Token strings are shared through the given vocabulary.
+	 */
+	void load(CharSequence text, final Vocabulary types) {
+		long start = System.nanoTime();
+		if (useICU()) {
+			List<String> tokens = tokenize(text.toString());
+			tokenizeNanos += System.nanoTime() - start;
+			load(tokens);
+			return;
+		}
+		// scan the text directly, strings are only created for new types
+		int from = size();
+		Tokenizer.scan(text, new Tokenizer.TokenHandler() {
+			@Override
+			public void token(CharSequence source, int start, int end) {
+				add(new Token(types.getTerm(types.add(source, start, end)), null));
+			}
+		});
+		long scanned = System.nanoTime();
+		tokenizeNanos += scanned - start;
+		for (int i = from; i < size(); i++) {
+			Token token = get(i);
+			token.setStem(stemmer.stem(token.getValue()));
+		}
+		stemNanos += System.nanoTime() - scanned;
 	}
 
 	public void load(List<String> tokens) {
+		long start = System.nanoTime();
 		for (String token : tokens) {
 			if (!token.isEmpty()) {
 				this.add(new Token(token, stemmer.stem(token)));
 			}
 		}
+		stemNanos += System.nanoTime() - start;
+	}
+
+	long getTokenizeNanos() {
+		return tokenizeNanos;
+	}
+
+	long getStemNanos() {
+		return stemNanos;
 	}
 
 
@@ -100,9 +150,20 @@ public class Document extends ArrayList<Token> {
 
 	}
 
-	private List<String> tokenizeRegex(String sequence) {
+	public int[] getStemIds(Dictionary dictionary) {
+		int[] ids = new int[size()];
+		int i = 0;
+		for (Token token : this) {
+			ids[i++] = dictionary.getId(token.getStem());
+		}
+		return ids;
+	}
+
+	// reference implementation of the Tokenizer
+	List<String> tokenizeRegex(String sequence) {
+		sequence = PARAGRAPHS.matcher(sequence).replaceAll("\n.\n");
 		sequence = sequence.replaceAll("\\r\\n|\\r|\\n", " ");
-		Matcher matcher = wordbounds.matcher(sequence);
+		Matcher matcher = WORDBOUNDS.matcher(sequence);
 		List<String> tokenList = new ArrayList<String>();
 		while (matcher.find()) {
 			String token = matcher.group(0).trim();
@@ -114,9 +175,10 @@ public class Document extends ArrayList<Token> {
 	}
 
 
-	private List<String> tokenizeICU(String sequence) throws MissingResourceException {
+	List<String> tokenizeICU(String sequence) throws MissingResourceException {
+		sequence = PARAGRAPHS.matcher(sequence).replaceAll("\n.\n");
 
-		Locale locale = getIso2LocaleMap().get(this.language);
+		Locale locale = ISO3_LOCALES.get(this.language);
 		if (locale == null) {
 			throw new MissingResourceException("Cannot find locale for language code ", Locale.class.getName(), this.language);
 		}
@@ -134,16 +196,21 @@ public class Document extends ArrayList<Token> {
 	}
 	
 	public List<String> tokenize(String sequence) throws MissingResourceException {
-		Pattern pattern = Pattern.compile("(\\r\\n|\\r|\\n){2,}", Pattern.DOTALL);
-		Matcher matcher = pattern.matcher(sequence);
-		sequence = matcher.replaceAll("\n.\n");
-		if (this.language.equals("zho") || this.language.equals("jpn") || this.language.equals("ara")) {
+		if (useICU()) {
 			return tokenizeICU(sequence);
 		} else {
-			return tokenizeRegex(sequence);
+			return Tokenizer.tokenize(sequence);
 		}
 	}
 
+	private boolean useICU() {
+		return useICU(this.language);
+	}
+
+	static boolean useICU(String language) {
+		return language.equals("zho") || language.equals("jpn") || language.equals("ara");
+	}
+
 	private static Map<String, Locale> getIso2LocaleMap() {
 		String[] languages = Locale.getISOLanguages();
 		Map<String, Locale> localeMap = new HashMap<String, Locale>(languages.length);
@@ -0,0 +1,266 @@
+package uhh_lt.keyterms;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+
+/**
+ * Reads files or channels into a {@link Document} without holding the whole
+ * text in memory. A reader thread decodes the input in chunks while the
+ * calling thread tokenizes the chunks that are complete. Chunks are cut
+ * after a space, a tab or a run of line breaks (see
+ * {@link Tokenizer#lastBoundary(CharSequence, int, int)}), so the document
+ * contains the same tokens as if the text had been read at once. Any
+ * exception or error of the reader thread is rethrown on the calling thread.
+ *
+ * Only the decoded chunks in the queue and the tail of the current chunk are
+ * held in memory; a text without any whitespace is kept until its end.
+ */
+public class DocumentReader {
+
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+	public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+	private static final CharBuffer END = CharBuffer.allocate(0);
+
+	/**
+	 * Receives the chunks in input order, on the calling thread.
+	 */
+	interface ChunkHandler {
+		void chunk(CharBuffer chunk) throws IOException;
+	}
+
+	private final String language;
+	private final int chunkSize;
+	private final int queueCapacity;
+
+	public DocumentReader(String language) {
+		this(language, DEFAULT_CHUNK_SIZE, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	public DocumentReader(String language, int chunkSize, int queueCapacity) {
+		if (chunkSize < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("Chunk size and queue capacity must be positive");
+		}
+		this.language = language;
+		this.chunkSize = chunkSize;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Reads UTF-8 text files as one document, each file followed by a line
+	 * break.
+	 */
+	public Document read(List<Path> files) throws IOException {
+		return read(new Producer(files, null, Charsets.UTF_8, false));
+	}
+
+	/**
+	 * Reads a channel as one document. The channel is not closed.
+	 */
+	public Document read(ReadableByteChannel channel, Charset charset) throws IOException {
+		return read(new Producer(Collections.<Path>emptyList(), channel, charset, false));
+	}
+
+	/**
+	 * Reads a channel line by line, like {@link java.util.Scanner#nextLine()}:
+	 * every line terminator (\r\n, \r, \n, U+0085, U+2028, U+2029) becomes a
+	 * \n and the last line is terminated. The channel is not closed.
+	 */
+	public Document readLines(ReadableByteChannel channel, Charset charset) throws IOException {
+		return read(new Producer(Collections.<Path>emptyList(), channel, charset, true));
+	}
+
+	/**
+	 * Reads UTF-8 text files like {@link #read(List)}, but hands the chunks
+	 * to a handler instead of loading them into a document.
+	 */
+	void read(List<Path> files, ChunkHandler handler) throws IOException {
+		read(new Producer(files, null, Charsets.UTF_8, false), handler);
+	}
+
+	/**
+	 * Reads a channel line by line like {@link #readLines(ReadableByteChannel, Charset)},
+	 * but hands the chunks to a handler. The channel is not closed.
+	 */
+	void readLines(ReadableByteChannel channel, Charset charset, ChunkHandler handler) throws IOException {
+		read(new Producer(Collections.<Path>emptyList(), channel, charset, true), handler);
+	}
+
+	private Document read(Producer producer) throws IOException {
+		final Document document = new Document(language);
+		final Vocabulary types = new Vocabulary();
+		read(producer, new ChunkHandler() {
+			@Override
+			public void chunk(CharBuffer chunk) {
+				document.load(chunk, types);
+			}
+		});
+		return document;
+	}
+
+	private void read(Producer producer, ChunkHandler handler) throws IOException {
+		Thread thread = new Thread(producer, "keyterms-reader");
+		thread.setDaemon(true);
+		thread.start();
+		try {
+			for (CharBuffer chunk = producer.take(); chunk != END; chunk = producer.take()) {
+				handler.chunk(chunk);
+			}
+		} finally {
+			thread.interrupt();
+		}
+		Throwable error = producer.error;
+		if (error != null) {
+			Throwables.throwIfInstanceOf(error, IOException.class);
+			Throwables.throwIfUnchecked(error);
+			throw new IOException(error);
+		}
+	}
+
+	private class Producer implements Runnable {
+
+		private final BlockingQueue<CharBuffer> queue = new ArrayBlockingQueue<CharBuffer>(queueCapacity);
+		private final List<Path> files;
+		private final ReadableByteChannel channel;
+		private final Charset charset;
+		private final boolean lines;
+
+		private final StringBuilder pending = new StringBuilder();
+		private int searched = 0;
+		private boolean afterCarriageReturn = false;
+		private volatile Throwable error;
+
+		Producer(List<Path> files, ReadableByteChannel channel, Charset charset, boolean lines) {
+			this.files = files;
+			this.channel = channel;
+			this.charset = charset;
+			this.lines = lines;
+		}
+
+		CharBuffer take() throws InterruptedIOException {
+			try {
+				return queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading");
+			}
+		}
+
+		@Override
+		public void run() {
+			boolean stopped = false;
+			try {
+				for (Path file : files) {
+					try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+						decode(fileChannel);
+					}
+					append(CharBuffer.wrap("\n"));
+				}
+				if (channel != null) {
+					decode(channel);
+					if (lines && pending.length() > 0 && pending.charAt(pending.length() - 1) != '\n') {
+						pending.append('\n');
+					}
+				}
+				emit(pending.length());
+			} catch (InterruptedException e) {
+				// the consumer has stopped
+				stopped = true;
+			} catch (Throwable e) {
+				// also runtime exceptions and errors, which would leave the consumer waiting
+				error = e;
+			} finally {
+				if (!stopped) {
+					try {
+						queue.put(END);
+					} catch (InterruptedException e) {
+						// the consumer has stopped
+					}
+				}
+			}
+		}
+
+		private void decode(ReadableByteChannel source) throws IOException, InterruptedException {
+			CharsetDecoder decoder = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			// room for at least one encoded or decoded character
+			int bufferSize = Math.max(chunkSize, 1024);
+			ByteBuffer bytes = ByteBuffer.allocate(bufferSize);
+			CharBuffer chars = CharBuffer.allocate(bufferSize);
+			boolean endOfInput = false;
+			while (!endOfInput) {
+				endOfInput = source.read(bytes) < 0;
+				bytes.flip();
+				CoderResult result;
+				do {
+					result = decoder.decode(bytes, chars, endOfInput);
+					drain(chars);
+				} while (result.isOverflow());
+				bytes.compact();
+			}
+			while (decoder.flush(chars).isOverflow()) {
+				drain(chars);
+			}
+			drain(chars);
+		}
+
+		private void drain(CharBuffer chars) throws InterruptedException {
+			chars.flip();
+			append(chars);
+			chars.clear();
+		}
+
+		private void append(CharBuffer chars) throws InterruptedException {
+			if (lines) {
+				while (chars.hasRemaining()) {
+					char ch = chars.get();
+					if (ch == '\n' && afterCarriageReturn) {
+						afterCarriageReturn = false;
+						continue;
+					}
+					afterCarriageReturn = ch == '\r';
+					if (ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029') {
+						ch = '\n';
+					}
+					pending.append(ch);
+				}
+			} else {
+				pending.append(chars);
+			}
+			if (pending.length() >= chunkSize) {
+				// the text before the searched offset has no boundary
+				int end = Tokenizer.lastBoundary(pending, searched, pending.length());
+				searched = Math.max(0, pending.length() - 1);
+				emit(end);
+			}
+		}
+
+		private void emit(int end) throws InterruptedException {
+			if (end <= 0) {
+				return;
+			}
+			queue.put(CharBuffer.wrap(pending.substring(0, end)));
+			pending.delete(0, end);
+			searched = 0;
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package uhh_lt.keyterms;
+
+/**
+ * Receives the time spent in each stage of an extraction and the sizes of
+ * its intermediate results. Calls may come from several threads at once.
+ * Extractions from a text or a token list count it in one fused pass (see
+ * {@link TargetCounter}), which stems and normalizes each distinct token
+ * once: {@link Stage#STEM} and {@link Stage#NORMALIZE} are the time of that
+ * work, and the per-token work of the pass is reported as
+ * {@link Stage#TOKENIZE} for text (as {@link Stage#COUNT} for token lists).
+ *
+ * @see Extractor#setListener(ExtractionListener)
+ * @see ExtractionMetrics
+ */
+public interface ExtractionListener {
+
+	enum Stage {
+		TOKENIZE, STEM, NORMALIZE, COUNT, FILTER, SCORE, MULTI_WORDS, RANK
+	}
+
+	enum Counter {
+		DOCUMENTS, TOKENS, TYPES, CANDIDATES, KEYTERMS, NGRAMS, MULTI_WORDS
+	}
+
+	ExtractionListener NONE = new ExtractionListener() {
+		@Override
+		public void stage(Stage stage, long nanos) {
+		}
+
+		@Override
+		public void count(Counter counter, long value) {
+		}
+	};
+
+	void stage(Stage stage, long nanos);
+
+	void count(Counter counter, long value);
+
+}
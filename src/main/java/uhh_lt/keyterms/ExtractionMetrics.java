@@ -0,0 +1,180 @@
+package uhh_lt.keyterms;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Sums the stage times and counts of all extractions it listens to. Values
+ * can be read as a {@link Snapshot} or through JMX once the metrics are
+ * {@link #register(String) registered}.
+ *
+ * <pre>
+ * ExtractionMetrics metrics = new ExtractionMetrics();
+ * extractor.setListener(metrics);
+ * metrics.register("news");
+ * </pre>
+ */
+public class ExtractionMetrics implements ExtractionListener, ExtractionMetricsMXBean {
+
+	public static final String DOMAIN = "uhh_lt.keyterms";
+
+	private static final Stage[] STAGES = Stage.values();
+	private static final Counter[] COUNTERS = Counter.values();
+
+	private final LongAdder[] stageNanos = adders(STAGES.length);
+	private final LongAdder[] counts = adders(COUNTERS.length);
+	private volatile ObjectName objectName;
+
+	private static LongAdder[] adders(int n) {
+		LongAdder[] adders = new LongAdder[n];
+		for (int i = 0; i < n; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	@Override
+	public void stage(Stage stage, long nanos) {
+		stageNanos[stage.ordinal()].add(nanos);
+	}
+
+	@Override
+	public void count(Counter counter, long value) {
+		counts[counter.ordinal()].add(value);
+	}
+
+	public Snapshot snapshot() {
+		long[] nanos = new long[STAGES.length];
+		for (int i = 0; i < nanos.length; i++) {
+			nanos[i] = stageNanos[i].sum();
+		}
+		long[] values = new long[COUNTERS.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = counts[i].sum();
+		}
+		return new Snapshot(nanos, values);
+	}
+
+	@Override
+	public void reset() {
+		for (LongAdder adder : stageNanos) {
+			adder.reset();
+		}
+		for (LongAdder adder : counts) {
+			adder.reset();
+		}
+	}
+
+	// JMX
+
+	@Override
+	public long getDocuments() {
+		return counts[Counter.DOCUMENTS.ordinal()].sum();
+	}
+
+	@Override
+	public Map<String, Long> getStageNanos() {
+		return snapshot().getStageNanos();
+	}
+
+	@Override
+	public Map<String, Long> getCounts() {
+		return snapshot().getCounts();
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server as
+	 * uhh_lt.keyterms:type=ExtractionMetrics,name=<i>name</i>.
+	 */
+	public synchronized ObjectName register(String name) throws JMException {
+		unregister();
+		ObjectName objectName = new ObjectName(DOMAIN + ":type=ExtractionMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.objectName = objectName;
+		return objectName;
+	}
+
+	public synchronized void unregister() throws JMException {
+		if (objectName != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Stage times and counts at one point in time.
+	 */
+	public static class Snapshot {
+
+		private final long[] stageNanos;
+		private final long[] counts;
+
+		Snapshot(long[] stageNanos, long[] counts) {
+			this.stageNanos = stageNanos;
+			this.counts = counts;
+		}
+
+		public long getNanos(Stage stage) {
+			return stageNanos[stage.ordinal()];
+		}
+
+		public long getCount(Counter counter) {
+			return counts[counter.ordinal()];
+		}
+
+		public long getTotalNanos() {
+			long total = 0;
+			for (long nanos : stageNanos) {
+				total += nanos;
+			}
+			return total;
+		}
+
+		public Map<String, Long> getStageNanos() {
+			Map<String, Long> map = new LinkedHashMap<String, Long>();
+			for (Stage stage : STAGES) {
+				map.put(stage.name(), getNanos(stage));
+			}
+			return map;
+		}
+
+		public Map<String, Long> getCounts() {
+			Map<String, Long> map = new LinkedHashMap<String, Long>();
+			for (Counter counter : COUNTERS) {
+				map.put(counter.name(), getCount(counter));
+			}
+			return map;
+		}
+
+		/**
+		 * @return a table of the stages with their time and share, followed
+		 * by the counts
+		 */
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			long total = getTotalNanos();
+			sb.append(String.format("%-12s %12s %7s%n", "stage", "ms", "share"));
+			for (Stage stage : STAGES) {
+				long nanos = getNanos(stage);
+				sb.append(String.format("%-12s %12.3f %6.1f%%%n", stage.name().toLowerCase(), 
+						nanos / 1e6, total == 0 ? 0.0 : 100.0 * nanos / total));
+			}
+			sb.append(String.format("%-12s %12.3f%n", "total", total / 1e6));
+			for (Counter counter : COUNTERS) {
+				sb.append(String.format("%-12s %12d%n", counter.name().toLowerCase(), getCount(counter)));
+			}
+			return sb.toString();
+		}
+	}
+
+}
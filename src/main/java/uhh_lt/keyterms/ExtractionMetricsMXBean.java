@@ -0,0 +1,19 @@
+package uhh_lt.keyterms;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ExtractionMetrics}: nanoseconds by stage and summed
+ * counts by counter name, since the last reset.
+ */
+public interface ExtractionMetricsMXBean {
+
+	long getDocuments();
+
+	Map<String, Long> getStageNanos();
+
+	Map<String, Long> getCounts();
+
+	void reset();
+
+}
@@ -0,0 +1,52 @@
+package uhh_lt.keyterms;
+
+import java.util.Map;
+import java.util.Set;
+
+public class ExtractionResult {
+
+	private final int index;
+	private final Map<String, Double> keyness;
+	private final RuntimeException error;
+
+	public ExtractionResult(int index, Map<String, Double> keyness) {
+		this.index = index;
+		this.keyness = keyness;
+		this.error = null;
+	}
+
+	public ExtractionResult(int index, RuntimeException error) {
+		this.index = index;
+		this.keyness = null;
+		this.error = error;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	public Map<String, Double> getKeyness() {
+		if (error != null) {
+			throw new IllegalStateException("Extraction of document " + index + " failed", error);
+		}
+		return keyness;
+	}
+
+	public Set<String> getKeyTerms() {
+		return getKeyness().keySet();
+	}
+
+	public RuntimeException getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return isSuccess() ? index + ": " + keyness : index + ": " + error;
+	}
+
+}
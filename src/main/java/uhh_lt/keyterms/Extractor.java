@@ -1,23 +1,36 @@
 package uhh_lt.keyterms;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -28,27 +41,66 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
 import com.google.common.base.Charsets;
-import com.google.common.collect.TreeMultiset;
+
+import uhh_lt.keyterms.ExtractionListener.Counter;
+import uhh_lt.keyterms.ExtractionListener.Stage;
+
 
 
 public class Extractor {
 
-	private static final Integer MAX_MWU_LENGTH = 4;
-	private final static Double MINIMUM_KEYNESS_THRESHOLD = 6.63; // 3.84;
+	static final Integer MAX_MWU_LENGTH = 4;
+	final static Double MINIMUM_KEYNESS_THRESHOLD = 6.63; // 3.84;
 
 	private final static Logger LOGGER = 
 			Logger.getLogger(Extractor.class.getName());
 
 	private Options cliOptions;
 
-	private Dictionary comparison;
+	// shared, read-only reference; all other extraction state is confined to a call
+	private volatile Dictionary comparison;
 
-	private String language = null;
-	private int nKeyterms = 25;
-	private boolean concatMultiWordUnits = true;
-	private double diceThreshold = 0.4;
+	private volatile String language = null;
+	private volatile int nKeyterms = 25;
+	private volatile boolean concatMultiWordUnits = true;
+	private volatile double diceThreshold = 0.4;
 	private boolean frequencyMode = false;
 	private String referenceFile = null;
+	private String referenceWeights = null;
+	private String mergeOutput = null;
+	private String compileFile = null;
+	private ExtractionMetrics profile = null;
+	private Integer serverPort = null;
+	private String corpusOutput = null;
+	private Integer approximateCapacity = null;
+	private boolean jsonLines = false;
+	private String buildOutput = null;
+	private long minFrequency = 1;
+
+	private volatile ExecutorService executor = ForkJoinPool.commonPool();
+	private volatile int batchSize = 1024;
+	private volatile ExtractionListener listener = ExtractionListener.NONE;
+	private volatile ResultCache cache = null;
+
+	/**
+	 * The settings of one extraction, read once from the volatile fields, so
+	 * that a concurrent setter changes neither a running extraction nor the
+	 * cache key of its result.
+	 */
+	static final class Settings {
+
+		final String language;
+		final Dictionary comparison;
+		final boolean concatMultiWordUnits;
+		final double diceThreshold;
+
+		Settings(String language, Dictionary comparison, boolean concatMultiWordUnits, double diceThreshold) {
+			this.language = language;
+			this.comparison = comparison;
+			this.concatMultiWordUnits = concatMultiWordUnits;
+			this.diceThreshold = diceThreshold;
+		}
+	}
 
 	public Extractor() {
 		super();
@@ -62,13 +114,29 @@ public class Extractor {
 	public void initialize(String language, Integer nKeyterms) throws IOException {
 		this.language = language;
 		this.nKeyterms = nKeyterms;
-		this.comparison = new Dictionary(language);
+		this.comparison = getSharedReference(language, null);
+	}
+
+	// the registry reports loading errors unchecked, a missing or broken reference is an IOException here
+	private static Dictionary getSharedReference(String language, File referenceFile) throws IOException {
+		try {
+			return DictionaryRegistry.getShared().get(language, referenceFile);
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
 	}
 
 	public String getLanguage() {
 		return language;
 	}
 
+	Dictionary getComparison() {
+		return comparison;
+	}
+
 
 	public void setLanguage(String language) {
 		this.language = language;
@@ -93,6 +161,22 @@ public class Extractor {
 		this.concatMultiWordUnits = concatMultiWordUnits;
 	}
 
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
 	public double getDiceThreshold() {
 		return diceThreshold;
 	}
@@ -101,126 +185,238 @@ public class Extractor {
 		this.diceThreshold = diceThreshold;
 	}
 
+	public ExtractionListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Reports stage times and counts of every extraction, e.g. to an
+	 * {@link ExtractionMetrics}.
+	 */
+	public void setListener(ExtractionListener listener) {
+		this.listener = listener == null ? ExtractionListener.NONE : listener;
+	}
+
+	public ResultCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Caches the rankings of text documents (extractRanking and
+	 * extractKeyness of strings or token lists), so a repeated document is
+	 * not extracted again. A cache may be shared between extractors; null
+	 * disables caching.
+	 */
+	public void setCache(ResultCache cache) {
+		this.cache = cache;
+	}
+
 	private void log(Level level, String message) {
 		LOGGER.log(level, message);
 	}
 
-	private TreeMap<String, Double> getKeyness(Dictionary target) {
+	double[] getKeyness(Dictionary target, Dictionary comparison) {
+		return getKeyness(target, comparison, this.language);
+	}
+
+	private double[] getKeyness(Dictionary target, Dictionary comparison, String language) {
+
+		ExtractionListener listener = this.listener;
+		long start = System.nanoTime();
 
 		long c = target.getTotalCounts();
 		long d = comparison.getTotalCounts();
 
-		// compute significance
-		TreeMap<String, Double> significances = new TreeMap<String, Double>();
-		Set<String> candidates = target.getStemVocabulary();
-		candidates = filterKeytermCandidates(candidates);
-		for (String type : candidates) {
-			long a = target.getStemFrequency(type);
-			long b = comparison.getStemFrequency(type);
-			Double significance = computeLogLikelihood(a, b, c, d);
-			significances.put(type, significance);
+		// apply language specific filters
+		boolean wordlengthFilter = applyWordlengthFilter(language);
+		boolean stopwordFilter = applyStopwordFilter(language);
+
+		// select the candidate stems and collect their target (a) and comparison (b) counts
+		int[] candidates = new int[target.size()];
+		long[] a = new long[target.size()];
+		long[] b = new long[target.size()];
+		int nCandidates = 0;
+		for (int id = 0; id < target.size(); id++) {
+			long frequency = target.getStemFrequency(id);
+			if (frequency == 0) continue;
+			int comparisonId = comparison.getId(target.getTerm(id));
+			if (!isKeytermCandidate(target.getTerm(id), comparisonId, comparison, wordlengthFilter, stopwordFilter)) continue;
+			candidates[nCandidates] = id;
+			a[nCandidates] = frequency;
+			b[nCandidates] = comparison.getStemFrequency(comparisonId);
+			nCandidates++;
+		}
+		long filtered = System.nanoTime();
+		listener.stage(Stage.FILTER, filtered - start);
+		listener.count(Counter.CANDIDATES, nCandidates);
+
+		// compute significance of all candidates in one pass over the count columns
+		double[] significance = new double[nCandidates];
+		computeLogLikelihood(a, b, c, d, significance, nCandidates);
+
+		// keep the keyterms by type id (NaN for non-keyterms).
+		// If several stems have the same type, the alphabetically last of them gives its keyness.
+		double[] keyness = new double[target.size()];
+		Arrays.fill(keyness, Double.NaN);
+		int[] keytermStems = new int[target.size()];
+		int nSignificant = 0;
+		for (int i = 0; i < nCandidates; i++) {
+			// minimum keyness filter
+			if (significance[i] < MINIMUM_KEYNESS_THRESHOLD) continue;
+			int id = candidates[i];
+			nSignificant++;
+			int type = target.getTypeFromStem(id);
+			if (Double.isNaN(keyness[type]) || target.getTerm(id).compareTo(target.getTerm(keytermStems[type])) > 0) {
+				keyness[type] = significance[i];
+				keytermStems[type] = id;
+			}
 		}
+		listener.stage(Stage.SCORE, System.nanoTime() - filtered);
+		listener.count(Counter.KEYTERMS, nSignificant);
 
-		return(significances);
+		return keyness;
 	}
 
 
-	private TreeMap<String, Double> getKeyterms(Dictionary target, Document document) {
+	// stemIds: the target stem id of each token, null if no multi-word units are concatenated
+	private Ranking getKeyterms(Dictionary target, int[] stemIds, Settings settings) {
 
-		TreeMap<String, Double> candidates = getKeyness(target);
+		double[] keyness = getKeyness(target, settings.comparison, settings.language);
 
-		// top n words + minimum keyness filter
-		TreeMap<String, Double> keyterms = new TreeMap<String, Double>();
-		for (Map.Entry<String, Double> candidate : candidates.entrySet()) {
-			if (candidate.getValue() >= MINIMUM_KEYNESS_THRESHOLD) {
-				keyterms.put(target.getTypeFromStem(candidate.getKey()), candidate.getValue());
-			}
+		// concatenate MWU (if the tokens are known)
+		if (stemIds != null) {
+			return Ranking.of(concatMultiWords(keyness, target, stemIds, settings.diceThreshold));
 		}
 
-
-		// concatenate MWU
-		if (this.concatMultiWordUnits) {
-			keyterms = concatMultiWords(keyterms, target, document);
+		String[] keyterms = new String[target.size()];
+		double[] scores = new double[target.size()];
+		int n = 0;
+		for (int type = 0; type < keyness.length; type++) {
+			if (!Double.isNaN(keyness[type])) {
+				keyterms[n] = target.getTerm(type);
+				scores[n] = keyness[type];
+				n++;
+			}
 		}
-
-		// sort
-		keyterms = sortMapByValue(keyterms);
-
-		return keyterms;
+		return new Ranking(keyterms, scores, n);
 
 	}
 
 
 
-	private TreeMap<String, Double> concatMultiWords(TreeMap<String, Double> keyterms, Dictionary target, Document document) {
-		TreeMultiset<NGram> ngrams = TreeMultiset.create();
-		Character currentSeparator = ' ';
-		ArrayList<NGram> activeNGrams = new ArrayList<NGram>();
-		for (Token token : document) {
-			if (token.getValue().equals("-")) {
-				currentSeparator = '-';
+	TreeMap<String, Double> concatMultiWords(double[] significances, Dictionary target, Document document) {
+		return concatMultiWords(significances, target, document.getStemIds(target), this.diceThreshold);
+	}
+
+	private TreeMap<String, Double> concatMultiWords(double[] significances, Dictionary target, int[] stemIds, double diceThreshold) {
+
+		long start = System.nanoTime();
+		int hyphen = target.getId("-");
+
+		// count the n-grams of each run of keyterms (hyphens are skipped)
+		int[] runTypes = new int[stemIds.length];
+		int[] runStems = new int[stemIds.length];
+		boolean[] runHyphens = new boolean[stemIds.length];
+		NGramTable ngrams = new NGramTable(Math.max(16, stemIds.length));
+		boolean hyphenated = false;
+		int length = 0;
+		for (int stemId : stemIds) {
+			if (stemId == hyphen) {
+				hyphenated = true;
 				continue;
 			} 
-			String type = target.getTypeFromStem(token.getStem());
-			if (keyterms.containsKey(type)) {
-
-				NGram ngram = new NGram();
-				activeNGrams.add(ngram);
-				int fromIndex = Math.max(0, activeNGrams.size() - MAX_MWU_LENGTH);
-				int toIndex = activeNGrams.size();
-				for (NGram ng : activeNGrams.subList(fromIndex, toIndex)) {
-					ng.append(token, type, keyterms.get(type), currentSeparator);
-				}
-				for (NGram ng : activeNGrams) {
-					try {
-						ngrams.add(ng.clone());
-					} catch (CloneNotSupportedException e) {
-						e.printStackTrace();
-					}
-				}
-				currentSeparator = ' ';
+			int typeId = target.getTypeFromStem(stemId);
+			if (!Double.isNaN(significances[typeId])) {
+				runTypes[length] = typeId;
+				runStems[length] = stemId;
+				runHyphens[length] = hyphenated;
+				length++;
 			} else {
-				activeNGrams = new ArrayList<NGram>();
-				currentSeparator = ' ';
+				countNGrams(ngrams, runTypes, runStems, runHyphens, length);
+				length = 0;
 			}
+			hyphenated = false;
 		}
+		countNGrams(ngrams, runTypes, runStems, runHyphens, length);
 
-		// filter multiwords by Dice
+		// filter multiwords by Dice (strings are only built for these)
 		TreeMap<String, Double> keyMultiWords = new TreeMap<String, Double>();
-		for (NGram ng : ngrams.elementSet()) {
-			Double dice = dice(ngrams.count(ng), ng.getPartialCounts(target));
-			if (dice >= this.diceThreshold) {
-				Double maxKeyness = ng.keyness();
-				LOGGER.log(Level.FINEST, "MWU detected: " + ng + " (" + maxKeyness + ")");
-				keyMultiWords.put(ng.toString(), maxKeyness);
+		for (int ng = 0; ng < ngrams.size(); ng++) {
+			int n = ngrams.getLength(ng);
+			long[] partialCounts = new long[n];
+			for (int i = 0; i < n; i++) {
+				partialCounts[i] = target.getStemFrequency(ngrams.getStem(ng, i));
+			}
+			Double dice = dice(ngrams.getCount(ng), partialCounts);
+			if (dice >= diceThreshold) {
+				Double maxKeyness = .0;
+				StringBuilder mwu = new StringBuilder();
+				for (int i = 0; i < n; i++) {
+					maxKeyness += significances[ngrams.getType(ng, i)];
+					if (i > 0) mwu.append(ngrams.isHyphenated(ng, i) ? '-' : ' ');
+					mwu.append(target.getTerm(ngrams.getType(ng, i)));
+				}
+				maxKeyness = maxKeyness / (double) n;
+				LOGGER.log(Level.FINEST, "MWU detected: " + mwu + " (" + maxKeyness + ")");
+				keyMultiWords.put(mwu.toString(), maxKeyness);
 			}
 		}
 
-		// clean multiwords (longest match)
-		Set<String> mwus = keyMultiWords.keySet();
-		Set<String> mwusToRemove = new HashSet<String>();
-		for (String mwu : mwus) {
-			if (longerMatchExists(mwu, mwus)) {
-				mwusToRemove.add(mwu);
+		removeShorterMultiWords(keyMultiWords);
+
+		ExtractionListener listener = this.listener;
+		listener.stage(Stage.MULTI_WORDS, System.nanoTime() - start);
+		listener.count(Counter.NGRAMS, ngrams.size());
+		listener.count(Counter.MULTI_WORDS, keyMultiWords.size());
+		return keyMultiWords;
+	}
+
+
+	/**
+	 * Counts the n-grams of a run of keyterms. N-grams shorter than the
+	 * maximum length are counted once per occurrence, n-grams of the maximum
+	 * length once for every keyterm from their end to the end of the run.
+	 * The stems of the first occurrence are kept.
+	 */
+	private static void countNGrams(NGramTable ngrams, int[] types, int[] stems, boolean[] hyphens, int length) {
+		for (int end = 1; end <= length; end++) {
+			// longest n-gram first, in the order of their first occurrence
+			for (int n = Math.min(MAX_MWU_LENGTH, end); n > 0; n--) {
+				long count = n == MAX_MWU_LENGTH ? length - end + 1 : 1;
+				ngrams.add(types, stems, hyphens, end - n, end, count);
 			}
 		}
-		for (String mwu : mwusToRemove) {
-			keyMultiWords.remove(mwu);
-			LOGGER.log(Level.FINEST, "Removing " + mwu);
-		}
-		return keyMultiWords;
 	}
 
 
-	private boolean longerMatchExists(String candidate, Set<String> testSet) {
-		String quotedCandidate = Pattern.quote(candidate);
-		for (String c : testSet) {
-			if (c.matches(quotedCandidate + "[ -].+") || c.matches(".+[ -]" + quotedCandidate)) return true;
+	// clean multiwords (longest match)
+	/**
+	 * Removes every multi-word unit that is the beginning or the end of a
+	 * longer one, followed or preceded by a space or a hyphen. All prefixes
+	 * and suffixes at separators are collected in one pass over the units.
+	 */
+	static void removeShorterMultiWords(Map<String, Double> keyMultiWords) {
+		Set<String> affixes = new HashSet<String>();
+		for (String mwu : keyMultiWords.keySet()) {
+			for (int i = 1; i < mwu.length() - 1; i++) {
+				char ch = mwu.charAt(i);
+				if (ch == ' ' || ch == '-') {
+					affixes.add(mwu.substring(0, i));
+					affixes.add(mwu.substring(i + 1));
+				}
+			}
+		}
+		Iterator<String> mwus = keyMultiWords.keySet().iterator();
+		while (mwus.hasNext()) {
+			String mwu = mwus.next();
+			if (affixes.contains(mwu)) {
+				mwus.remove();
+				LOGGER.log(Level.FINEST, "Removing " + mwu);
+			}
 		}
-		return false;
 	}
 
-	private Double dice(long nCooc, long... parts) {
+	static Double dice(long nCooc, long... parts) {
 		int n = parts.length;
 		double numerator = (double) n * nCooc;
 		double denominator = .0;
@@ -232,41 +428,45 @@ public class Extractor {
 
 
 
-	private Set<String> filterKeytermCandidates(Set<String> candidates) {
-
-		// apply language specific filters
-		boolean wordlengthFilter = applyWordlengthFilter(this.language);
-		boolean stopwordFilter = applyStopwordFilter(this.language);
-
-		HashSet<String> filteredSet = new HashSet<String>();
-		for (String candidate : candidates) {
-			// filter out terms with no word chars
-			if (candidate.replaceAll("[^\\p{L}]", "").length() < 1) {
-				LOGGER.log(Level.FINEST, "Removed (candidate.replaceAll(\"[^\\p{L}]\", \"\").length() < 1): " + candidate);
-				continue;
-			};
-			// filter out terms with two or more special chars
-			if (candidate.replaceAll("[\\p{L}-]", "").length() > 1) {
-				LOGGER.log(Level.FINEST, "Removed (candidate.replaceAll([\\p{L}-]).length() > 1): " + candidate);
-				continue;
-			};
-			// filter out single chars
-			if (wordlengthFilter && candidate.length() < 2) {
-				LOGGER.log(Level.FINEST, "Removed (candidate.length() < 2): " + candidate);
-				continue;
+	static boolean isKeytermCandidate(String candidate, int comparisonId, Dictionary comparison, boolean wordlengthFilter, boolean stopwordFilter) {
+		// count letters and the chars of all other code points but hyphens (like
+		// the lengths of replaceAll("[^\\p{L}]", "") and replaceAll("[\\p{L}-]", ""))
+		int letters = 0;
+		int specialChars = 0;
+		for (int i = 0; i < candidate.length(); ) {
+			int codePoint = candidate.codePointAt(i);
+			int length = Character.charCount(codePoint);
+			if (Character.isLetter(codePoint)) {
+				letters += length;
+			} else if (codePoint != '-') {
+				specialChars += length;
 			}
-			// filter out stopwords
-			if (stopwordFilter && comparison.isStopword(candidate)) {
-				LOGGER.log(Level.FINEST, "Removed (comparison.isStopword(candidate)): " + candidate);
-				continue;
-			};
-			filteredSet.add(candidate);
+			i += length;
 		}
-
-		return filteredSet;
+		// filter out terms with no word chars
+		if (letters < 1) {
+			if (LOGGER.isLoggable(Level.FINEST)) LOGGER.log(Level.FINEST, "Removed (no letters): " + candidate);
+			return false;
+		};
+		// filter out terms with two or more special chars
+		if (specialChars > 1) {
+			if (LOGGER.isLoggable(Level.FINEST)) LOGGER.log(Level.FINEST, "Removed (two or more special chars): " + candidate);
+			return false;
+		};
+		// filter out single chars
+		if (wordlengthFilter && candidate.length() < 2) {
+			if (LOGGER.isLoggable(Level.FINEST)) LOGGER.log(Level.FINEST, "Removed (candidate.length() < 2): " + candidate);
+			return false;
+		}
+		// filter out stopwords
+		if (stopwordFilter && comparison.isStopword(comparisonId)) {
+			if (LOGGER.isLoggable(Level.FINEST)) LOGGER.log(Level.FINEST, "Removed (comparison.isStopword(candidate)): " + candidate);
+			return false;
+		};
+		return true;
 	}
 
-	private boolean applyWordlengthFilter(String lang) {
+	static boolean applyWordlengthFilter(String lang) {
 		boolean apply;
 		switch (lang) {
 		case "zho":
@@ -281,11 +481,22 @@ public class Extractor {
 	}
 
 
-	private boolean applyStopwordFilter(String lang) {
+	static boolean applyStopwordFilter(String lang) {
 		return true;
 	}
 
-	private Double computeLogLikelihood(long a, long b, long c, long d) {
+	/**
+	 * Signed log-likelihood of the first n count pairs (a[i], b[i]) against
+	 * the totals c and d, into scores[0, n). The loop only reads and writes
+	 * primitive columns, so it compiles to one tight loop.
+	 */
+	static void computeLogLikelihood(long[] a, long[] b, long c, long d, double[] scores, int n) {
+		for (int i = 0; i < n; i++) {
+			scores[i] = computeLogLikelihood(a[i], b[i], c, d);
+		}
+	}
+
+	static double computeLogLikelihood(long a, long b, long c, long d) {
 
 		double e1 = c * (a + b) / (double) (c + d);
 		double e2 = d * (a + b) / (double) (c + d);
@@ -305,29 +516,6 @@ public class Extractor {
 
 
 
-	static class DoubleValueComparator implements Comparator<String>{
-		HashMap<String, Double> map = new HashMap<String, Double>();
-		public DoubleValueComparator(Map<String, Double> map){
-			this.map.putAll(map);
-		}
-		@Override
-		public int compare(String s1, String s2) {
-			if(map.get(s1) > map.get(s2)) {
-				return -1;
-			} else {
-				return 1;
-			}
-		}
-	}
-
-	private static TreeMap<String, Double> sortMapByValue(Map<String, Double> map){
-		Comparator<String> comparator = new DoubleValueComparator(map);
-		TreeMap<String, Double> result = new TreeMap<String, Double>(comparator);
-		result.putAll(map);
-		return result;
-	}
-
-
 	private List<String> getConfiguration(String[] args) {
 		cliOptions = new Options();
 
@@ -351,10 +539,50 @@ public class Extractor {
 		frequencyOpt.setRequired(false);
 		cliOptions.addOption(frequencyOpt);
 
-		Option referenceOpt = new Option("r", "reference", true, "External reference resource file (file format: 'type\\tfrequency', one per line).");
+		Option buildOpt = new Option("b", "build", true, "Build a reference resource file from large corpora (like -f, but counted in parallel within a memory budget, spilling to disk). Directories are walked recursively.");
+		buildOpt.setRequired(false);
+		cliOptions.addOption(buildOpt);
+
+		Option minFrequencyOpt = new Option("t", "min-frequency", true, "Minimum frequency of the types in a reference resource built with -b (default: 1)");
+		minFrequencyOpt.setRequired(false);
+		cliOptions.addOption(minFrequencyOpt);
+
+		Option referenceOpt = new Option("r", "reference", true, "External reference resource file (file format: 'type\\tfrequency', one per line). Several comma-separated files are merged.");
 		referenceOpt.setRequired(false);
 		cliOptions.addOption(referenceOpt);
 
+		Option weightsOpt = new Option("w", "weights", true, "Comma-separated weights of the -r files when they are merged (default: 1 each)");
+		weightsOpt.setRequired(false);
+		cliOptions.addOption(weightsOpt);
+
+		Option mergeOpt = new Option("u", "merge", true, "Merge the (weighted) -r files into one reference resource file and exit");
+		mergeOpt.setRequired(false);
+		cliOptions.addOption(mergeOpt);
+
+		Option compileOpt = new Option("c", "compile", true, "Compile the reference resource (language or -r file) into a binary dictionary file and exit. Use it with -r or -Dkeyterms.dictionaries=<dir> for fast loading.");
+		compileOpt.setRequired(false);
+		cliOptions.addOption(compileOpt);
+
+		Option serverOpt = new Option("s", "server", true, "Serve keyterm extraction over HTTP on the given port, with the reference dictionaries of the -l language(s) kept in memory (comma-separated, e.g. -l eng,deu)");
+		serverOpt.setRequired(false);
+		cliOptions.addOption(serverOpt);
+
+		Option outputOpt = new Option("o", "output", true, "Corpus mode: extract keyterms per file (directories are walked recursively) in parallel and append one line per file to the given output ('-' for standard output). Files already in the output are skipped.");
+		outputOpt.setRequired(false);
+		cliOptions.addOption(outputOpt);
+
+		Option jsonlOpt = new Option("j", "jsonl", false, "Write the corpus mode output as JSON lines instead of TSV");
+		jsonlOpt.setRequired(false);
+		cliOptions.addOption(jsonlOpt);
+
+		Option approximateOpt = new Option("a", "approximate", true, "Extract from estimated counts of at most the given number of types (Count-Min sketch and heavy hitters), in fixed memory for unbounded input. Multi-word units are not concatenated.");
+		approximateOpt.setRequired(false);
+		cliOptions.addOption(approximateOpt);
+
+		Option profileOpt = new Option("p", "profile", false, "Print the time spent in each extraction stage to standard error");
+		profileOpt.setRequired(false);
+		cliOptions.addOption(profileOpt);
+
 		Option verboseOpt = new Option("v", "verbose", false, "Output more log information");
 		verboseOpt.setRequired(false);
 		cliOptions.addOption(verboseOpt);
@@ -390,6 +618,12 @@ public class Extractor {
 				LOGGER.setLevel(Level.INFO);
 			}
 
+			// set profiling
+			if (cmd.hasOption("p")) {
+				this.profile = new ExtractionMetrics();
+				this.listener = this.profile;
+			}
+
 			// set mwu
 			if (cmd.hasOption("m")) {
 				this.concatMultiWordUnits = false;
@@ -413,8 +647,31 @@ public class Extractor {
 				this.frequencyMode = false;
 			}
 
-			// set dice threshold
+			// set reference building
+			this.buildOutput = cmd.getOptionValue("b");
+			this.minFrequency = cmd.getOptionValue("t") == null ? 1 : Long.parseLong(cmd.getOptionValue("t"));
+
+			// set reference file
 			this.referenceFile = cmd.getOptionValue("r");
+			this.referenceWeights = cmd.getOptionValue("w");
+			this.mergeOutput = cmd.getOptionValue("u");
+
+			// set compile target
+			this.compileFile = cmd.getOptionValue("c");
+
+			// set server port
+			if (cmd.hasOption("s")) {
+				this.serverPort = Integer.parseInt(cmd.getOptionValue("s"));
+			}
+
+			// set corpus mode
+			this.corpusOutput = cmd.getOptionValue("o");
+			this.jsonLines = cmd.hasOption("j");
+
+			// set approximate mode
+			if (cmd.hasOption("a")) {
+				this.approximateCapacity = Integer.parseInt(cmd.getOptionValue("a"));
+			}
 
 			// set target files
 			targetFiles = cmd.getArgList();
@@ -434,16 +691,14 @@ public class Extractor {
 
 
 	private void processTargets(List<String> files) {
-		// concatenate target text files
-		StringBuilder sb = new StringBuilder();
+		// check the target text files, they are read as one document
+		List<Path> paths = new ArrayList<Path>();
 		for (String f : files) {
 			LOGGER.log(Level.INFO, "Extracting from file " + f);
 			try {
-				byte[] raw = Files.readAllBytes(Paths.get(f));
 				String mimeType = Files.probeContentType(Paths.get(f));
 				if (mimeType.startsWith("text")) {
-					String fileContent = new String(raw, Charsets.UTF_8);
-					sb.append(fileContent + "\n");
+					paths.add(Paths.get(f));
 				} else {
 					throw new ParseException("File appears to have false format: " + f + "(" + mimeType + ")");
 				}
@@ -457,40 +712,125 @@ public class Extractor {
 				System.exit(1);
 			}
 		}
-		// create dictionary
-		Document targetDocument = Document.readText(sb.toString(), this.language);
+		// count the target while the files are streamed in chunks
+		TargetCounter counter = newTargetCounter(1 << 12);
+		try {
+			new DocumentReader(this.language).read(paths, counter.chunkHandler());
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Could not read file: " + e.getMessage());
+			System.exit(1);
+		}
 		// process extraction
-		process(targetDocument);
+		process(counter);
 	}
 
 
 
+	private void processCorpus(List<String> inputs) {
+		if (inputs.isEmpty()) {
+			LOGGER.log(Level.SEVERE, "Corpus mode needs files or directories");
+			System.exit(1);
+		}
+		CorpusExtractor corpus = new CorpusExtractor(this);
+		corpus.setJsonLines(this.jsonLines);
+		try {
+			List<Path> paths = new ArrayList<Path>();
+			for (String input : inputs) {
+				paths.add(Paths.get(input));
+			}
+			List<Path> files = CorpusExtractor.listFiles(paths);
+			if (this.corpusOutput.equals("-")) {
+				Writer out = new OutputStreamWriter(System.out, Charsets.UTF_8);
+				corpus.process(files, out);
+				out.flush();
+			} else {
+				// resume: skip the files of an earlier run
+				Path output = Paths.get(this.corpusOutput);
+				long truncated = CorpusExtractor.truncateIncompleteLine(output);
+				if (truncated > 0) {
+					LOGGER.log(Level.WARNING, "Removed an incomplete last line (" + truncated + " bytes) from " + output);
+				}
+				Set<String> processed = corpus.readProcessed(output);
+				// the output itself may be inside a walked directory
+				Path outputFile = output.toAbsolutePath().normalize();
+				List<Path> remaining = new ArrayList<Path>();
+				int done = 0;
+				for (Path file : files) {
+					if (file.toAbsolutePath().normalize().equals(outputFile)) continue;
+					if (processed.contains(file.toString())) {
+						done++;
+					} else {
+						remaining.add(file);
+					}
+				}
+				LOGGER.log(Level.INFO, "Extracting from " + remaining.size() + " files (" 
+						+ done + " done before)");
+				try (Writer out = Files.newBufferedWriter(output, Charsets.UTF_8, 
+						StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+					corpus.process(remaining, out);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Corpus extraction failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private void processApproximate(List<String> files) {
+		ApproximateCounter counter = new ApproximateCounter(this, this.approximateCapacity, 
+				ApproximateCounter.DEFAULT_EPSILON, ApproximateCounter.DEFAULT_DELTA);
+		DocumentReader reader = new DocumentReader(this.language);
+		try {
+			if (files.isEmpty()) {
+				LOGGER.log(Level.INFO, "No file(s) given. Using standard input (press CTRL-D to finalize input).");
+				reader.readLines(Channels.newChannel(System.in), Charset.defaultCharset(), counter.chunkHandler());
+			} else {
+				List<Path> paths = new ArrayList<Path>();
+				for (String f : files) {
+					paths.add(Paths.get(f));
+				}
+				reader.read(paths, counter.chunkHandler());
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Could not read input: " + e.getMessage());
+			System.exit(1);
+		}
+		LOGGER.log(Level.INFO, "Counted " + counter.getTotalCounts() + " tokens, counts overestimated by at most " 
+				+ counter.getErrorBound() + ", types not kept occur at most " + counter.getMissingBound() + " times");
+		System.out.println(formatResult(rank(counter.getRanking(), this.nKeyterms)));
+		if (this.profile != null) {
+			System.err.print(this.profile.snapshot());
+		}
+	}
+
 	private void processFromStdin() {
 		LOGGER.log(Level.INFO, "No file(s) given. Using standard input (press CTRL-D to finalize input).");
-		StringBuilder sb = new StringBuilder();
-		Scanner scanner = new Scanner( System.in );
-		while (scanner.hasNextLine()) {
-			sb.append(scanner.nextLine()).append("\n");
+		// count the target while the input is streamed in chunks
+		TargetCounter counter = newTargetCounter(1 << 12);
+		try {
+			new DocumentReader(this.language).readLines(Channels.newChannel(System.in), Charset.defaultCharset(), 
+					counter.chunkHandler());
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Could not read from standard input");
+			System.exit(1);
 		}
-		scanner.close();
-		// create dictionary
-		Document targetDocument = Document.readText(sb.toString(), this.language);
 		// process extraction
-		process(targetDocument);
+		process(counter);
 	}
 
 
-	private void process(Document targetDocument) {
-		targetDocument.normalizeSentenceBeginning(comparison);
-		Dictionary target = new Dictionary(this.language, targetDocument);
-
+	private void process(TargetCounter counter) {
 		String result;
 		if (this.frequencyMode) {
-			result = formatResult(target);
+			result = formatResult(countVocabulary(counter));
 		} else {
-			result = formatResult(getKeyterms(target, targetDocument));
+			// only the printed keyterms are ranked
+			result = formatResult(rank(extract(counter), this.nKeyterms));
 		}
 		System.out.println(result);
+		if (this.profile != null) {
+			System.err.print(this.profile.snapshot());
+		}
 	}
 
 
@@ -505,63 +845,360 @@ public class Extractor {
 
 	private String formatResult(Map<String, Double> keywords) {
 		StringBuilder output = new StringBuilder();
-		int kwCounter = 0;
 		for (Map.Entry<String, Double> kw : keywords.entrySet()) {
-			kwCounter++;
-			if (kwCounter > this.nKeyterms) break;
 			output.append(kw.getKey()).append("=").append(kw.getValue()).append(System.lineSeparator());
 		}
 		return output.toString();
 	}
 
-	// Java API
+	private Settings settings() {
+		return new Settings(this.language, this.comparison, this.concatMultiWordUnits, this.diceThreshold);
+	}
+
+	private Ranking extract(Document targetDocument) {
+		// the target document and dictionary are confined to this call
+		Settings settings = settings();
+		Dictionary target = countVocabulary(targetDocument, settings);
+		return getKeyterms(target, settings.concatMultiWordUnits ? targetDocument.getStemIds(target) : null, settings);
+	}
+
+	/**
+	 * @return a fused counter of a target text, normalized against the
+	 * comparison dictionary (text is added to it, e.g. in chunks)
+	 */
+	TargetCounter newTargetCounter(int expectedSize) {
+		return newTargetCounter(expectedSize, settings());
+	}
+
+	private TargetCounter newTargetCounter(int expectedSize, Settings settings) {
+		return new TargetCounter(settings, expectedSize);
+	}
+
+	private Ranking extract(TargetCounter counter) {
+		Settings settings = counter.getSettings();
+		Dictionary target = countVocabulary(counter);
+		return getKeyterms(target, settings.concatMultiWordUnits ? counter.getStemIds() : null, settings);
+	}
+
+	private Dictionary countVocabulary(TargetCounter counter) {
+		ExtractionListener listener = this.listener;
+		listener.count(Counter.DOCUMENTS, 1);
+		listener.count(Counter.TOKENS, counter.size());
+		listener.stage(Stage.TOKENIZE, counter.getTokenizeNanos());
+		listener.stage(Stage.STEM, counter.getStemNanos());
+		listener.stage(Stage.NORMALIZE, counter.getNormalizeNanos());
+		long start = System.nanoTime();
+		Dictionary target = counter.toDictionary();
+		listener.stage(Stage.COUNT, counter.getCountNanos() + System.nanoTime() - start);
+		listener.count(Counter.TYPES, target.getTypeVocabulary().size());
+		return target;
+	}
 
-	public synchronized Map<String, Double> extractKeyness(List<String> document) {
-		Document targetDocument = new Document(this.language);
-		targetDocument.load(document);
-		targetDocument.normalizeSentenceBeginning(comparison);
-		Dictionary target = new Dictionary(this.language, targetDocument);
-		Map<String, Double> keywords = getKeyterms(target, targetDocument);
-		return keywords;
+	/**
+	 * @return all single word keyterms of a target dictionary, e.g. of
+	 * estimated counts
+	 */
+	Ranking rank(Dictionary target) {
+		return getKeyterms(target, null, settings());
 	}
 
-	public synchronized Map<String, Double> extractKeyness(String document) {
-		Document targetDocument = new Document(this.language);
-		targetDocument.load(document);
-		targetDocument.normalizeSentenceBeginning(comparison);
-		Dictionary target = new Dictionary(this.language, targetDocument);
-		Map<String, Double> keywords = getKeyterms(target, targetDocument);
-		return keywords;
+	/**
+	 * @return the k best keyterms of a counted target text
+	 */
+	Map<String, Double> extractTop(TargetCounter counter, int k) {
+		return rank(extract(counter), k);
+	}
+
+	private Dictionary countVocabulary(Document targetDocument, Settings settings) {
+		ExtractionListener listener = this.listener;
+		listener.count(Counter.DOCUMENTS, 1);
+		listener.count(Counter.TOKENS, targetDocument.size());
+		listener.stage(Stage.TOKENIZE, targetDocument.getTokenizeNanos());
+		listener.stage(Stage.STEM, targetDocument.getStemNanos());
+		long start = System.nanoTime();
+		targetDocument.normalizeSentenceBeginning(settings.comparison);
+		long normalized = System.nanoTime();
+		listener.stage(Stage.NORMALIZE, normalized - start);
+		Dictionary target = new Dictionary(settings.language, targetDocument);
+		listener.stage(Stage.COUNT, System.nanoTime() - normalized);
+		listener.count(Counter.TYPES, target.getTypeVocabulary().size());
+		return target;
+	}
+
+	private LinkedHashMap<String, Double> rank(Ranking ranking, int k) {
+		long start = System.nanoTime();
+		LinkedHashMap<String, Double> top = ranking.top(k);
+		this.listener.stage(Stage.RANK, System.nanoTime() - start);
+		return top;
+	}
+
+	// Java API (thread-safe, a single extractor may be shared between threads)
+
+	public Map<String, Double> extractKeyness(List<String> document) {
+		Ranking ranking = extractRanking(document);
+		return rank(ranking, ranking.size());
 	}
 
-	public synchronized Set<String> extractKeyTerms(List<String> document) {
-		Document targetDocument = new Document(this.language);
-		targetDocument.load(document);
-		targetDocument.normalizeSentenceBeginning(comparison);
-		Dictionary target = new Dictionary(this.language, targetDocument);
-		Map<String, Double> keywords = getKeyterms(target, targetDocument);
-		return keywords.keySet();
+	public Map<String, Double> extractKeyness(String document) {
+		Ranking ranking = extractRanking(document);
+		return rank(ranking, ranking.size());
 	}
 
-	public synchronized Set<String> extractKeyTerms(String document) {
-		Document targetDocument = new Document(this.language);
-		targetDocument.load(document);
-		targetDocument.normalizeSentenceBeginning(comparison);
-		Dictionary target = new Dictionary(this.language, targetDocument);
-		Map<String, Double> keywords = getKeyterms(target, targetDocument);
-		return keywords.keySet();
+	/**
+	 * Extracts from a loaded document, e.g. one streamed by a
+	 * {@link DocumentReader}. The document is normalized in place.
+	 */
+	public Map<String, Double> extractKeyness(Document document) {
+		Ranking ranking = extract(document);
+		return rank(ranking, ranking.size());
+	}
+
+	/**
+	 * @return all keyterms, to be read in rank order with {@link Ranking#top(int)}
+	 * or, lazily, with its iterator
+	 */
+	public Ranking extractRanking(final List<String> document) {
+		// the key and the extraction use the same settings
+		final Settings settings = settings();
+		ResultCache cache = this.cache;
+		if (cache != null) {
+			return cache.get(ResultCache.key(document, settings), 
+					new Callable<Ranking>() {
+						@Override
+						public Ranking call() {
+							return extractUncached(document, settings);
+						}
+					});
+		}
+		return extractUncached(document, settings);
+	}
+
+	public Ranking extractRanking(final String document) {
+		final Settings settings = settings();
+		ResultCache cache = this.cache;
+		if (cache != null) {
+			return cache.get(ResultCache.key(document, settings), 
+					new Callable<Ranking>() {
+						@Override
+						public Ranking call() {
+							return extractUncached(document, settings);
+						}
+					});
+		}
+		return extractUncached(document, settings);
+	}
+
+	private Ranking extractUncached(List<String> document, Settings settings) {
+		TargetCounter counter = newTargetCounter(document.size() / 2, settings);
+		counter.add(document);
+		return extract(counter);
+	}
+
+	private Ranking extractUncached(String document, Settings settings) {
+		TargetCounter counter = newTargetCounter(document.length() / 12, settings);
+		counter.add(document);
+		return extract(counter);
+	}
+
+	public Set<String> extractKeyTerms(List<String> document) {
+		return extractKeyness(document).keySet();
+	}
+
+	public Set<String> extractKeyTerms(String document) {
+		return extractKeyness(document).keySet();
 	}
 	
-	public synchronized SortedSet<String> getStopwords() {
+	// Batch API (results in input order, failures are reported per document)
+
+	public List<ExtractionResult> extractKeynessBatch(Collection<String> documents) {
+		List<String> documentList = new ArrayList<String>(documents);
+		ExtractionResult[] results = new ExtractionResult[documentList.size()];
+		runBatch(documentList, 0, results);
+		return Arrays.asList(results);
+	}
+
+	public List<ExtractionResult> extractKeynessBatch(Iterator<String> documents) {
+		// read the documents in chunks to keep the number of pending documents bounded
+		List<ExtractionResult> results = new ArrayList<ExtractionResult>();
+		List<String> chunk = new ArrayList<String>(this.batchSize);
+		while (documents.hasNext()) {
+			chunk.add(documents.next());
+			if (chunk.size() == this.batchSize || !documents.hasNext()) {
+				ExtractionResult[] chunkResults = new ExtractionResult[chunk.size()];
+				runBatch(chunk, results.size(), chunkResults);
+				results.addAll(Arrays.asList(chunkResults));
+				chunk.clear();
+			}
+		}
+		return results;
+	}
+
+	private void runBatch(List<String> documents, int offset, ExtractionResult[] results) {
+		ExecutorService executor = this.executor;
+		if (executor instanceof ForkJoinPool) {
+			((ForkJoinPool) executor).invoke(new BatchTask(documents, offset, results, 0, documents.size()));
+			return;
+		}
+		List<Future<ExtractionResult>> futures = new ArrayList<Future<ExtractionResult>>(documents.size());
+		for (int i = 0; i < documents.size(); i++) {
+			final String document = documents.get(i);
+			final int index = offset + i;
+			futures.add(executor.submit(new Callable<ExtractionResult>() {
+				@Override
+				public ExtractionResult call() {
+					return extractSafely(document, index);
+				}
+			}));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				results[i] = futures.get(i).get();
+			} catch (ExecutionException e) {
+				results[i] = new ExtractionResult(offset + i, new RuntimeException(e.getCause()));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Batch extraction interrupted", e);
+			}
+		}
+	}
+
+	private ExtractionResult extractSafely(String document, int index) {
+		try {
+			if (document == null) {
+				throw new IllegalArgumentException("Document is null");
+			}
+			return new ExtractionResult(index, extractKeyness(document));
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Extraction failed for document " + index + ": " + e);
+			return new ExtractionResult(index, e);
+		}
+	}
+
+	private class BatchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -4416617218471473367L;
+
+		private final List<String> documents;
+		private final int offset;
+		private final ExtractionResult[] results;
+		private final int from;
+		private final int to;
+
+		BatchTask(List<String> documents, int offset, ExtractionResult[] results, int from, int to) {
+			this.documents = documents;
+			this.offset = offset;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1) {
+				if (to > from) {
+					results[from] = extractSafely(documents.get(from), offset + from);
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new BatchTask(documents, offset, results, from, mid),
+					new BatchTask(documents, offset, results, mid, to));
+		}
+	}
+
+	public SortedSet<String> getStopwords() {
 		return comparison.getStopwords();
 	}
 
 
 	private void getReferenceResource() {
+		try {
+			if (this.referenceFile == null) {
+				this.comparison = getSharedReference(this.language, null);
+			} else if (this.referenceFile.contains(",") || this.referenceWeights != null) {
+				this.comparison = getReferenceMerger().toDictionary("unknown");
+			} else {
+				this.comparison = getSharedReference("unknown", new File(this.referenceFile));
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Could not load reference resources: " + e.getMessage());
+			System.exit(1);
+		} catch (IllegalStateException e) {
+			LOGGER.log(Level.SEVERE, e.getMessage() + ": " + (e.getCause() == null ? "" : e.getCause().getMessage()));
+			System.exit(1);
+		}
+	}
+
+	private ReferenceMerger getReferenceMerger() {
+		String[] files = this.referenceFile.split(",");
+		String[] weights = this.referenceWeights == null ? new String[0] : this.referenceWeights.split(",");
+		if (weights.length > 0 && weights.length != files.length) {
+			LOGGER.log(Level.SEVERE, "Expected " + files.length + " weights for the reference resources");
+			System.exit(1);
+		}
+		ReferenceMerger merger = new ReferenceMerger();
+		for (int i = 0; i < files.length; i++) {
+			merger.add(Paths.get(files[i]), weights.length == 0 ? 1.0 : Double.parseDouble(weights[i]));
+		}
+		return merger;
+	}
+
+	private void mergeReferenceResources() {
 		if (this.referenceFile == null) {
-			this.comparison = new Dictionary(this.language);
-		} else {
-			this.comparison = new Dictionary(new File(this.referenceFile), "unknown");
+			LOGGER.log(Level.SEVERE, "Merging needs reference resource files (-r)");
+			System.exit(1);
+		}
+		try (Writer out = Files.newBufferedWriter(Paths.get(this.mergeOutput), Charsets.UTF_8)) {
+			long types = getReferenceMerger().write(out);
+			LOGGER.log(Level.INFO, "Wrote " + types + " types to " + this.mergeOutput);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Could not merge reference resources: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private void serve() {
+		try {
+			KeytermServer server = new KeytermServer(new InetSocketAddress(this.serverPort), 
+					Arrays.asList(this.language.split(",")));
+			server.setnKeyterms(this.nKeyterms);
+			server.setConcatMultiWordUnits(this.concatMultiWordUnits);
+			server.setDiceThreshold(this.diceThreshold);
+			server.start();
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Could not start server on port " + this.serverPort + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private void buildReferenceResource(List<String> inputs) {
+		if (inputs.isEmpty()) {
+			LOGGER.log(Level.SEVERE, "Building a reference resource needs files or directories");
+			System.exit(1);
+		}
+		ReferenceBuilder builder = new ReferenceBuilder(this.language, this.comparison);
+		builder.setMinFrequency(this.minFrequency);
+		try {
+			List<Path> paths = new ArrayList<Path>();
+			for (String input : inputs) {
+				paths.add(Paths.get(input));
+			}
+			try (Writer out = Files.newBufferedWriter(Paths.get(this.buildOutput), Charsets.UTF_8)) {
+				long types = builder.build(CorpusExtractor.listFiles(paths), out);
+				LOGGER.log(Level.INFO, "Wrote " + types + " types to " + this.buildOutput);
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Could not build reference resource: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private void compileReferenceResource() {
+		try {
+			DictionaryFile.write(this.comparison, this.language, new File(this.compileFile));
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Could not write compiled dictionary: " + this.compileFile);
+			System.exit(1);
 		}
 	}
 
@@ -574,9 +1211,30 @@ public class Extractor {
 		extractor.log(Level.INFO, "------------------------------------------------------------------");
 		List<String> filesToProcess = extractor.getConfiguration(args);
 
+		if (extractor.mergeOutput != null) {
+			extractor.mergeReferenceResources();
+			return;
+		}
+
+		if (extractor.serverPort != null) {
+			extractor.serve();
+			return;
+		}
+
 		extractor.getReferenceResource();
 
-		if (filesToProcess.isEmpty()) {
+		if (extractor.compileFile != null) {
+			extractor.compileReferenceResource();
+			return;
+		}
+
+		if (extractor.buildOutput != null) {
+			extractor.buildReferenceResource(filesToProcess);
+		} else if (extractor.corpusOutput != null) {
+			extractor.processCorpus(filesToProcess);
+		} else if (extractor.approximateCapacity != null) {
+			extractor.processApproximate(filesToProcess);
+		} else if (filesToProcess.isEmpty()) {
 			extractor.processFromStdin();
 		} else {
 			extractor.processTargets(filesToProcess);
@@ -0,0 +1,654 @@
+package uhh_lt.keyterms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Keyness of a sliding window of documents against the comparison
+ * dictionary of an {@link Extractor}.
+ *
+ * Documents can be added and removed at any time, or are evicted when they
+ * fall out of a count or time window. The window keeps running type, stem
+ * and n-gram counts, so a query only rescores the terms whose counts changed
+ * since the last query. All scores are recomputed when the total count of
+ * the window has drifted by more than the rescore tolerance (default: 1%)
+ * since the last full rescoring; with a tolerance of 0 the result is exact.
+ *
+ * Multi-word units are detected from plain counts of contiguous n-grams, so
+ * 4-grams may score differently than in {@link Extractor}, which counts
+ * them once per following keyterm. The ids of terms that no document in the
+ * window refers to any more are freed and reused, so the vocabulary grows
+ * with the distinct terms of the window. All methods are synchronized.
+ */
+public class IncrementalExtractor {
+
+	private final String language;
+	private final Dictionary comparison;
+	private final StemmerWrapper stemmer;
+	private final boolean wordlengthFilter;
+	private final boolean stopwordFilter;
+	private final boolean concatMultiWordUnits;
+	private final double diceThreshold;
+	private int nKeyterms;
+
+	// window of documents in insertion order
+	private final LinkedHashMap<Long, Entry> window = new LinkedHashMap<Long, Entry>();
+	private long nextId = 0;
+	private long newestTimestamp = Long.MIN_VALUE;
+	private int maxDocuments = Integer.MAX_VALUE;
+	private long maxAge = Long.MAX_VALUE;
+	private double rescoreTolerance = 0.01;
+
+	// running counts by term id (types and stems share ids, as in Dictionary)
+	private final Vocabulary terms = new Vocabulary();
+	private final List<Set<Integer>> variants = new ArrayList<Set<Integer>>();
+	private long[] typeCounts = new long[0];
+	private long[] stemCounts = new long[0];
+	private long[] referenceCounts = new long[0];
+	private int[] typeStems = new int[0];
+	private int[] stemTypes = new int[0];
+	private byte[] candidates = new byte[0];
+	// references from the documents in the window and from the types to their stems
+	private int[] references = new int[0];
+	private final BitSet countedStems = new BitSet();
+	private long totalCounts = 0;
+
+	// scores of the stems, ranked by keyness
+	private double[] scores = new double[0];
+	private final TreeSet<Integer> ranking = new TreeSet<Integer>(new Comparator<Integer>() {
+		@Override
+		public int compare(Integer s1, Integer s2) {
+			// highest keyness first, ties in alphabetical order of the types
+			int cmp = Double.compare(scores[s2], scores[s1]);
+			if (cmp == 0) cmp = terms.getTerm(getType(s1)).compareTo(terms.getTerm(getType(s2)));
+			return cmp != 0 ? cmp : Integer.compare(s1, s2);
+		}
+	});
+	private long scoredTotalCounts = 0;
+	private final BitSet dirtyStems = new BitSet();
+	private final BitSet dirtyMappings = new BitSet();
+
+	// n-gram counts and accepted multi-word units
+	private final HashMap<Phrase, Phrase> phrases = new HashMap<Phrase, Phrase>();
+	private final HashMap<Integer, Set<Phrase>> phrasesByStem = new HashMap<Integer, Set<Phrase>>();
+	private final Set<Phrase> dirtyPhrases = new HashSet<Phrase>();
+	private final BitSet dirtyPhraseStems = new BitSet();
+	private final HashMap<Phrase, Double> multiWords = new HashMap<Phrase, Double>();
+
+	/**
+	 * Creates an empty window with the language, comparison dictionary and
+	 * settings of an initialized extractor.
+	 */
+	public IncrementalExtractor(Extractor extractor) {
+		this.language = extractor.getLanguage();
+		this.comparison = extractor.getComparison();
+		if (this.comparison == null) {
+			throw new IllegalStateException("Extractor is not initialized");
+		}
+		this.stemmer = StemmerWrapper.forLanguage(language);
+		this.wordlengthFilter = Extractor.applyWordlengthFilter(language);
+		this.stopwordFilter = Extractor.applyStopwordFilter(language);
+		this.concatMultiWordUnits = extractor.concatMultiWordUnits();
+		this.diceThreshold = extractor.getDiceThreshold();
+		this.nKeyterms = extractor.getnKeyterms();
+	}
+
+	// window
+
+	public synchronized long add(String document) {
+		return add(document, System.currentTimeMillis());
+	}
+
+	public synchronized long add(String document, long timestamp) {
+		Document targetDocument = new Document(this.language);
+		targetDocument.load(document);
+		return add(targetDocument, timestamp);
+	}
+
+	/**
+	 * Adds a document to the window and evicts the documents that fall out
+	 * of it. The document is normalized in place.
+	 *
+	 * @return id of the document, for {@link #remove(long)}
+	 */
+	public synchronized long add(Document document, long timestamp) {
+		document.normalizeSentenceBeginning(comparison);
+		Entry entry = new Entry(nextId++, timestamp, document);
+		window.put(entry.id, entry);
+		count(entry, 1);
+		newestTimestamp = Math.max(newestTimestamp, timestamp);
+		evict();
+		return entry.id;
+	}
+
+	public synchronized boolean remove(long id) {
+		Entry entry = window.remove(id);
+		if (entry == null) {
+			return false;
+		}
+		count(entry, -1);
+		return true;
+	}
+
+	/**
+	 * Removes the documents added before the first document with a timestamp
+	 * of at least the given one (documents are evicted in insertion order).
+	 *
+	 * @return number of removed documents
+	 */
+	public synchronized int evictBefore(long timestamp) {
+		int removed = 0;
+		Iterator<Entry> entries = window.values().iterator();
+		while (entries.hasNext()) {
+			Entry entry = entries.next();
+			if (entry.timestamp >= timestamp) break;
+			entries.remove();
+			count(entry, -1);
+			removed++;
+		}
+		return removed;
+	}
+
+	private void evict() {
+		Iterator<Entry> entries = window.values().iterator();
+		while (window.size() > maxDocuments) {
+			Entry entry = entries.next();
+			entries.remove();
+			count(entry, -1);
+		}
+		if (maxAge != Long.MAX_VALUE) {
+			evictBefore(newestTimestamp - maxAge);
+		}
+	}
+
+	public synchronized void clear() {
+		for (Entry entry : window.values()) {
+			count(entry, -1);
+		}
+		window.clear();
+	}
+
+	public synchronized int getDocumentCount() {
+		return window.size();
+	}
+
+	public synchronized long getTotalCounts() {
+		return totalCounts;
+	}
+
+	public synchronized int getMaxDocuments() {
+		return maxDocuments;
+	}
+
+	public synchronized void setMaxDocuments(int maxDocuments) {
+		this.maxDocuments = maxDocuments;
+		evict();
+	}
+
+	public synchronized long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * Documents older than the newest document by more than the maximum age
+	 * (in the unit of the timestamps) are evicted.
+	 */
+	public synchronized void setMaxAge(long maxAge) {
+		this.maxAge = maxAge;
+		evict();
+	}
+
+	public synchronized double getRescoreTolerance() {
+		return rescoreTolerance;
+	}
+
+	public synchronized void setRescoreTolerance(double rescoreTolerance) {
+		this.rescoreTolerance = rescoreTolerance;
+	}
+
+	public synchronized int getnKeyterms() {
+		return nKeyterms;
+	}
+
+	public synchronized void setnKeyterms(int nKeyterms) {
+		this.nKeyterms = nKeyterms;
+	}
+
+	// query
+
+	public synchronized Map<String, Double> getKeyness() {
+		return getKeyness(this.nKeyterms);
+	}
+
+	/**
+	 * @return top keyterms (or multi-word units) of the window in rank order
+	 */
+	public synchronized Map<String, Double> getKeyness(int k) {
+		update();
+		return concatMultiWordUnits ? rankMultiWords(k) : rankKeyterms(k);
+	}
+
+	public synchronized Set<String> getKeyTerms() {
+		return getKeyness().keySet();
+	}
+
+	private Map<String, Double> rankKeyterms(int k) {
+		LinkedHashMap<String, Double> keyterms = new LinkedHashMap<String, Double>();
+		for (Integer stem : ranking) {
+			if (keyterms.size() >= k) break;
+			int type = getType(stem);
+			if (getTypeOwner(type) == stem) {
+				keyterms.put(terms.getTerm(type), scores[stem]);
+			}
+		}
+		return keyterms;
+	}
+
+	private Map<String, Double> rankMultiWords(int k) {
+		TreeMap<String, Double> keyMultiWords = new TreeMap<String, Double>();
+		for (Map.Entry<Phrase, Double> multiWord : multiWords.entrySet()) {
+			keyMultiWords.put(getName(multiWord.getKey()), multiWord.getValue());
+		}
+		Extractor.removeShorterMultiWords(keyMultiWords);
+
+		return Ranking.of(keyMultiWords).top(k);
+	}
+
+	// counting
+
+	private void count(Entry entry, int delta) {
+		for (int i = 0; i < entry.types.length; i++) {
+			int type = entry.types[i];
+			int stem = entry.stems[i];
+			typeCounts[type] += delta;
+			stemCounts[stem] += delta;
+			totalCounts += delta;
+			countedStems.set(stem, stemCounts[stem] > 0);
+			dirtyStems.set(stem);
+			dirtyMappings.set(typeStems[type]);
+			dirtyPhraseStems.set(stem);
+		}
+		if (concatMultiWordUnits) {
+			countPhrases(entry.tokens, delta);
+		}
+		if (delta < 0) {
+			release(entry.types);
+			release(entry.stems);
+			release(entry.tokens);
+		}
+	}
+
+	private void countPhrases(int[] tokens, int delta) {
+		int hyphen = terms.getId("-");
+		int[] run = new int[tokens.length];
+		boolean[] hyphenated = new boolean[tokens.length];
+		int length = 0;
+		boolean afterHyphen = false;
+		for (int token : tokens) {
+			if (token == hyphen) {
+				afterHyphen = true;
+				continue;
+			}
+			if (!isCandidate(token)) {
+				length = 0;
+				afterHyphen = false;
+				continue;
+			}
+			run[length] = token;
+			hyphenated[length] = afterHyphen;
+			length++;
+			afterHyphen = false;
+			for (int n = 1; n <= Math.min(length, Extractor.MAX_MWU_LENGTH); n++) {
+				countPhrase(new Phrase(run, hyphenated, length - n, length), delta);
+			}
+		}
+	}
+
+	private void countPhrase(Phrase phrase, int delta) {
+		Phrase counted = phrases.get(phrase);
+		if (counted == null) {
+			counted = phrase;
+			phrases.put(counted, counted);
+			for (int stem : counted.stems) {
+				Set<Phrase> indexed = phrasesByStem.get(stem);
+				if (indexed == null) {
+					indexed = new HashSet<Phrase>();
+					phrasesByStem.put(stem, indexed);
+				}
+				indexed.add(counted);
+			}
+		}
+		counted.count += delta;
+		if (counted.count > 0) {
+			dirtyPhrases.add(counted);
+			return;
+		}
+		phrases.remove(counted);
+		for (int stem : counted.stems) {
+			Set<Phrase> indexed = phrasesByStem.get(stem);
+			indexed.remove(counted);
+			if (indexed.isEmpty()) phrasesByStem.remove(stem);
+		}
+		dirtyPhrases.remove(counted);
+		multiWords.remove(counted);
+	}
+
+	private int intern(String term) {
+		int id = terms.add(term);
+		if (id >= typeCounts.length) {
+			grow(Math.max(1024, id * 2));
+		}
+		references[id]++;
+		return id;
+	}
+
+	private int internType(String type) {
+		int id = intern(type);
+		if (typeStems[id] < 0) {
+			int stem = intern(stemmer.stem(type));
+			// a type that is its own stem does not keep itself alive
+			if (stem == id) references[id]--;
+			typeStems[id] = stem;
+			while (variants.size() <= stem) variants.add(null);
+			if (variants.get(stem) == null) variants.set(stem, new HashSet<Integer>());
+			variants.get(stem).add(id);
+		}
+		return id;
+	}
+
+	private void grow(int capacity) {
+		int size = typeCounts.length;
+		typeCounts = Arrays.copyOf(typeCounts, capacity);
+		stemCounts = Arrays.copyOf(stemCounts, capacity);
+		referenceCounts = Arrays.copyOf(referenceCounts, capacity);
+		typeStems = Arrays.copyOf(typeStems, capacity);
+		stemTypes = Arrays.copyOf(stemTypes, capacity);
+		candidates = Arrays.copyOf(candidates, capacity);
+		references = Arrays.copyOf(references, capacity);
+		scores = Arrays.copyOf(scores, capacity);
+		Arrays.fill(referenceCounts, size, capacity, -1);
+		Arrays.fill(typeStems, size, capacity, -1);
+		Arrays.fill(stemTypes, size, capacity, -1);
+		Arrays.fill(scores, size, capacity, Double.NaN);
+	}
+
+	private void release(int[] ids) {
+		for (int id : ids) {
+			release(id);
+		}
+	}
+
+	/**
+	 * Frees the id of a term without references. Its counts are 0 and its
+	 * phrases have been removed, so only the mappings and the cached values
+	 * of the id need to be reset before the id is reused.
+	 */
+	private void release(int id) {
+		if (--references[id] > 0) return;
+		int stem = typeStems[id];
+		if (stem >= 0) {
+			Set<Integer> types = variants.get(stem);
+			types.remove(id);
+			if (types.isEmpty()) variants.set(stem, null);
+			if (stemTypes[stem] == id) {
+				// the ranking compares the type of the stem, so unrank it first
+				unrank(stem);
+				stemTypes[stem] = -1;
+				dirtyMappings.set(stem);
+				dirtyStems.set(stem);
+			}
+		}
+		unrank(id);
+		terms.remove(id);
+		referenceCounts[id] = -1;
+		typeStems[id] = -1;
+		stemTypes[id] = -1;
+		candidates[id] = 0;
+		scores[id] = Double.NaN;
+		if (stem >= 0 && stem != id) {
+			release(stem);
+		}
+	}
+
+	private boolean isCandidate(int stem) {
+		if (candidates[stem] == 0) {
+			String term = terms.getTerm(stem);
+			boolean candidate = Extractor.isKeytermCandidate(term, comparison.getId(term), comparison, wordlengthFilter, stopwordFilter);
+			candidates[stem] = (byte) (candidate ? 1 : 2);
+		}
+		return candidates[stem] == 1;
+	}
+
+	// scoring
+
+	private void update() {
+		// stem-type mapping of the stems with changed type counts
+		for (int stem = dirtyMappings.nextSetBit(0); stem >= 0; stem = dirtyMappings.nextSetBit(stem + 1)) {
+			int type = getBestType(stem);
+			if (type != stemTypes[stem]) {
+				unrank(stem);
+				markPhrases(stem);
+				stemTypes[stem] = type;
+				dirtyStems.set(stem);
+			}
+		}
+		dirtyMappings.clear();
+
+		boolean rescoreAll = Math.abs(totalCounts - scoredTotalCounts) > rescoreTolerance * scoredTotalCounts;
+		if (rescoreAll) {
+			scoredTotalCounts = totalCounts;
+			// stems with a count, and the dirty ones that may have lost their score
+			dirtyStems.or(countedStems);
+		}
+		for (int stem = dirtyStems.nextSetBit(0); stem >= 0; stem = dirtyStems.nextSetBit(stem + 1)) {
+			rescore(stem);
+		}
+		dirtyStems.clear();
+
+		if (concatMultiWordUnits) {
+			Collection<Phrase> changed = dirtyPhrases;
+			if (rescoreAll) {
+				changed = phrases.keySet();
+			} else {
+				for (int stem = dirtyPhraseStems.nextSetBit(0); stem >= 0; stem = dirtyPhraseStems.nextSetBit(stem + 1)) {
+					Set<Phrase> indexed = phrasesByStem.get(stem);
+					if (indexed != null) dirtyPhrases.addAll(indexed);
+				}
+			}
+			for (Phrase phrase : changed) {
+				evaluate(phrase);
+			}
+		}
+		dirtyPhrases.clear();
+		dirtyPhraseStems.clear();
+	}
+
+	private void rescore(int stem) {
+		unrank(stem);
+		double score = Double.NaN;
+		long a = stemCounts[stem];
+		if (a > 0 && isCandidate(stem)) {
+			if (referenceCounts[stem] < 0) {
+				referenceCounts[stem] = comparison.getStemFrequency(comparison.getId(terms.getTerm(stem)));
+			}
+			score = Extractor.computeLogLikelihood(a, referenceCounts[stem], totalCounts, comparison.getTotalCounts());
+		}
+		scores[stem] = score;
+		if (isRanked(stem)) {
+			ranking.add(stem);
+		}
+		markPhrases(stem);
+	}
+
+	private boolean isRanked(int stem) {
+		return scores[stem] >= Extractor.MINIMUM_KEYNESS_THRESHOLD;
+	}
+
+	private void unrank(int stem) {
+		if (isRanked(stem)) {
+			ranking.remove(stem);
+		}
+	}
+
+	/**
+	 * A type represents its own stem, if that has no type of its own, and
+	 * the stem it was chosen for. Like in Extractor.getKeyterms, the keyness
+	 * of the alphabetically last of these stems is used.
+	 *
+	 * @return the stem whose keyness is used for the type, or -1
+	 */
+	private int getTypeOwner(int type) {
+		int owner = -1;
+		int stem = typeStems[type];
+		if (stem >= 0 && stemTypes[stem] == type && isRanked(stem)) {
+			owner = stem;
+		}
+		if (stemTypes[type] < 0 && isRanked(type)
+				&& (owner < 0 || terms.getTerm(type).compareTo(terms.getTerm(owner)) > 0)) {
+			owner = type;
+		}
+		return owner;
+	}
+
+	// phrases of the raw stems with the same type as the stem need a new evaluation
+	private void markPhrases(int stem) {
+		int type = getType(stem);
+		dirtyPhraseStems.set(stem);
+		dirtyPhraseStems.set(type);
+		if (typeStems[type] >= 0) {
+			dirtyPhraseStems.set(typeStems[type]);
+		}
+	}
+
+	private void evaluate(Phrase phrase) {
+		long[] partialCounts = new long[phrase.stems.length];
+		Double keyness = .0;
+		for (int i = 0; i < phrase.stems.length; i++) {
+			int owner = getTypeOwner(getType(phrase.stems[i]));
+			if (owner < 0) {
+				multiWords.remove(phrase);
+				return;
+			}
+			double k = scores[owner];
+			keyness += k;
+			partialCounts[i] = stemCounts[phrase.stems[i]];
+		}
+		if (Extractor.dice(phrase.count, partialCounts) >= diceThreshold) {
+			multiWords.put(phrase, keyness / (double) phrase.stems.length);
+		} else {
+			multiWords.remove(phrase);
+		}
+	}
+
+	// most lemma like type of a stem, chosen like in Dictionary.buildStemTypeMapping
+	private int getBestType(int stem) {
+		Set<Integer> types = stem < variants.size() ? variants.get(stem) : null;
+		if (types == null) return -1;
+		int best = -1;
+		for (int type : types) {
+			if (typeCounts[type] <= 0) continue;
+			if (best < 0) {
+				best = type;
+				continue;
+			}
+			String term = terms.getTerm(type);
+			String bestTerm = terms.getTerm(best);
+			int cmp = Integer.compare(bestTerm.length(), term.length());
+			if (cmp == 0) cmp = Long.compare(typeCounts[type], typeCounts[best]);
+			if (cmp == 0) cmp = bestTerm.compareTo(term);
+			if (cmp > 0) best = type;
+		}
+		return best;
+	}
+
+	private int getType(int stem) {
+		return stemTypes[stem] < 0 ? stem : stemTypes[stem];
+	}
+
+	private String getName(Phrase phrase) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < phrase.stems.length; i++) {
+			if (i > 0) sb.append((phrase.hyphens & (1 << i)) != 0 ? '-' : ' ');
+			sb.append(terms.getTerm(getType(phrase.stems[i])));
+		}
+		return sb.toString();
+	}
+
+	private class Entry {
+
+		final long id;
+		final long timestamp;
+		// counted types and stems, raw stems of all tokens
+		final int[] types;
+		final int[] stems;
+		final int[] tokens;
+
+		Entry(long id, long timestamp, Document document) {
+			this.id = id;
+			this.timestamp = timestamp;
+			int[] types = new int[document.size()];
+			int[] stems = new int[document.size()];
+			this.tokens = new int[document.size()];
+			int n = 0;
+			int i = 0;
+			for (Token token : document) {
+				String type = Dictionary.clean(token.getValue());
+				if (!type.isEmpty()) {
+					types[n] = internType(type);
+					stems[n] = intern(Dictionary.clean(token.getStem()));
+					n++;
+				}
+				tokens[i++] = intern(token.getStem());
+			}
+			this.types = Arrays.copyOf(types, n);
+			this.stems = Arrays.copyOf(stems, n);
+		}
+	}
+
+	/**
+	 * N-gram of stem ids with the separators between them (bit i set: hyphen
+	 * before stem i).
+	 */
+	private static class Phrase {
+
+		final int[] stems;
+		final int hyphens;
+		final int hash;
+		long count;
+
+		Phrase(int[] run, boolean[] hyphenated, int from, int to) {
+			this.stems = Arrays.copyOfRange(run, from, to);
+			int hyphens = 0;
+			for (int i = 1; i < stems.length; i++) {
+				if (hyphenated[from + i]) hyphens |= 1 << i;
+			}
+			this.hyphens = hyphens;
+			this.hash = 31 * Arrays.hashCode(stems) + hyphens;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Phrase)) return false;
+			Phrase other = (Phrase) obj;
+			return hash == other.hash && hyphens == other.hyphens && Arrays.equals(stems, other.stems);
+		}
+	}
+
+}
@@ -0,0 +1,232 @@
+package uhh_lt.keyterms;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reading and writing for the server, without a dependency.
+ * Values are read as Map, List, String, Double, Boolean or null.
+ */
+class Json {
+
+	private final String text;
+	private int pos = 0;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the text is not valid JSON
+	 */
+	static Object parse(String text) {
+		Json json = new Json(text);
+		Object value = json.readValue();
+		json.skipWhitespace();
+		if (json.pos < text.length()) {
+			throw json.error("Unexpected content");
+		}
+		return value;
+	}
+
+	static void quote(StringBuilder sb, String value) {
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			switch (ch) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (ch < 0x20 || ch == '\u2028' || ch == '\u2029') {
+					sb.append(String.format("\\u%04x", (int) ch));
+				} else {
+					sb.append(ch);
+				}
+			}
+		}
+		sb.append('"');
+	}
+
+	/**
+	 * Appends <code>"keyterms":[{"term":...,"keyness":...},...]</code>.
+	 */
+	static void appendKeyterms(StringBuilder sb, Map<String, Double> keyterms) {
+		sb.append("\"keyterms\":[");
+		boolean first = true;
+		for (Map.Entry<String, Double> keyterm : keyterms.entrySet()) {
+			if (!first) sb.append(',');
+			first = false;
+			sb.append("{\"term\":");
+			quote(sb, keyterm.getKey());
+			sb.append(",\"keyness\":").append(keyterm.getValue()).append('}');
+		}
+		sb.append(']');
+	}
+
+	private Object readValue() {
+		skipWhitespace();
+		if (pos >= text.length()) {
+			throw error("Unexpected end");
+		}
+		char ch = text.charAt(pos);
+		switch (ch) {
+		case '{':
+			return readObject();
+		case '[':
+			return readArray();
+		case '"':
+			return readString();
+		case 't':
+			return readLiteral("true", Boolean.TRUE);
+		case 'f':
+			return readLiteral("false", Boolean.FALSE);
+		case 'n':
+			return readLiteral("null", null);
+		default:
+			return readNumber();
+		}
+	}
+
+	private Map<String, Object> readObject() {
+		Map<String, Object> object = new LinkedHashMap<String, Object>();
+		pos++;
+		skipWhitespace();
+		if (consume('}')) {
+			return object;
+		}
+		do {
+			skipWhitespace();
+			if (pos >= text.length() || text.charAt(pos) != '"') {
+				throw error("Expected a name");
+			}
+			String name = readString();
+			skipWhitespace();
+			if (!consume(':')) {
+				throw error("Expected ':'");
+			}
+			object.put(name, readValue());
+			skipWhitespace();
+		} while (consume(','));
+		if (!consume('}')) {
+			throw error("Expected '}'");
+		}
+		return object;
+	}
+
+	private List<Object> readArray() {
+		List<Object> array = new ArrayList<Object>();
+		pos++;
+		skipWhitespace();
+		if (consume(']')) {
+			return array;
+		}
+		do {
+			array.add(readValue());
+			skipWhitespace();
+		} while (consume(','));
+		if (!consume(']')) {
+			throw error("Expected ']'");
+		}
+		return array;
+	}
+
+	private String readString() {
+		StringBuilder sb = new StringBuilder();
+		pos++;
+		while (pos < text.length()) {
+			char ch = text.charAt(pos++);
+			if (ch == '"') {
+				return sb.toString();
+			}
+			if (ch != '\\') {
+				sb.append(ch);
+				continue;
+			}
+			if (pos >= text.length()) break;
+			char escaped = text.charAt(pos++);
+			switch (escaped) {
+			case 'b':
+				sb.append('\b');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 't':
+				sb.append('\t');
+				break;
+			case 'u':
+				if (pos + 4 > text.length()) throw error("Invalid escape");
+				try {
+					sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+				} catch (NumberFormatException e) {
+					throw error("Invalid escape");
+				}
+				pos += 4;
+				break;
+			default:
+				sb.append(escaped);
+			}
+		}
+		throw error("Unterminated string");
+	}
+
+	private Object readLiteral(String literal, Object value) {
+		if (!text.startsWith(literal, pos)) {
+			throw error("Unexpected value");
+		}
+		pos += literal.length();
+		return value;
+	}
+
+	private Double readNumber() {
+		int start = pos;
+		while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+			pos++;
+		}
+		try {
+			return Double.valueOf(text.substring(start, pos));
+		} catch (NumberFormatException e) {
+			throw error("Unexpected value");
+		}
+	}
+
+	private boolean consume(char ch) {
+		if (pos < text.length() && text.charAt(pos) == ch) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private void skipWhitespace() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + pos + " of the JSON input");
+	}
+
+}
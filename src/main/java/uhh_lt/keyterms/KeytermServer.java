@@ -0,0 +1,352 @@
+package uhh_lt.keyterms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Charsets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Keyterm extraction over HTTP, with the reference dictionaries of the
+ * configured languages kept in memory. Built on the JDK's HttpServer.
+ *
+ * <ul>
+ * <li><code>POST /keyterms?language=eng&amp;n=25</code> extracts from a
+ * plain text body, or from every document of a JSON body
+ * <code>{"documents": ["...", ...]}</code> (or a plain JSON array).</li>
+ * <li><code>GET /health</code> answers as long as the server runs.</li>
+ * <li><code>GET /ready</code> answers 200 once all dictionaries are loaded,
+ * 503 before, and 500 if loading them failed.</li>
+ * </ul>
+ *
+ * Extractions run on a fixed number of workers with a bounded queue; a
+ * request that does not fit into the queue is answered at once with 503 and
+ * a Retry-After header.
+ *
+ * If the system property keyterms.cache.size is set, the results of all
+ * languages are cached in one {@link ResultCache}; /health then reports its
+ * size and hit rate.
+ */
+public class KeytermServer {
+
+	public static final String WORKERS_PROPERTY = "keyterms.server.workers";
+	public static final String QUEUE_PROPERTY = "keyterms.server.queue";
+	public static final int DEFAULT_QUEUE_CAPACITY = 64;
+	public static final int MAX_REQUEST_SIZE = 16 << 20;
+
+	private final static Logger LOGGER = 
+			Logger.getLogger(Extractor.class.getName());
+
+	private final List<String> languages;
+	private final HttpServer server;
+	private final ThreadPoolExecutor workers;
+	private final Map<String, Extractor> extractors = new ConcurrentHashMap<String, Extractor>();
+	private final ResultCache cache = System.getProperty(ResultCache.SIZE_PROPERTY) != null ? new ResultCache() : null;
+	private volatile boolean ready = false;
+	// the reason loading the dictionaries failed, null while loading or ready
+	private volatile String failure = null;
+
+	private int nKeyterms = 25;
+	private boolean concatMultiWordUnits = true;
+	private double diceThreshold = 0.4;
+
+	public KeytermServer(InetSocketAddress address, List<String> languages) throws IOException {
+		this(address, languages, 
+				Integer.getInteger(WORKERS_PROPERTY, Runtime.getRuntime().availableProcessors()), 
+				Integer.getInteger(QUEUE_PROPERTY, DEFAULT_QUEUE_CAPACITY));
+	}
+
+	public KeytermServer(InetSocketAddress address, List<String> languages, int workers, int queueCapacity) throws IOException {
+		if (languages.isEmpty()) {
+			throw new IllegalArgumentException("No language configured");
+		}
+		this.languages = new ArrayList<String>(languages);
+		this.workers = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<Runnable>(queueCapacity));
+		this.server = HttpServer.create(address, 0);
+		// handlers only dispatch, extractions run on the workers
+		server.createContext("/keyterms", new ExtractionHandler());
+		server.createContext("/health", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if (cache == null) {
+					respond(exchange, 200, "{\"status\":\"UP\"}");
+				} else {
+					respond(exchange, 200, "{\"status\":\"UP\",\"cache\":{\"size\":" + cache.size() 
+							+ ",\"hitRate\":" + cache.getHitRate() + "}}");
+				}
+			}
+		});
+		server.createContext("/ready", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if (ready) {
+					respond(exchange, 200, "{\"status\":\"READY\"}");
+				} else if (failure != null) {
+					StringBuilder body = new StringBuilder("{\"status\":\"FAILED\",\"error\":");
+					Json.quote(body, failure);
+					respond(exchange, 500, body.append('}').toString());
+				} else {
+					respond(exchange, 503, "{\"status\":\"LOADING\"}");
+				}
+			}
+		});
+	}
+
+	public void setnKeyterms(int nKeyterms) {
+		this.nKeyterms = nKeyterms;
+	}
+
+	public void setConcatMultiWordUnits(boolean concatMultiWordUnits) {
+		this.concatMultiWordUnits = concatMultiWordUnits;
+	}
+
+	public void setDiceThreshold(double diceThreshold) {
+		this.diceThreshold = diceThreshold;
+	}
+
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * @return true if the dictionaries could not be loaded; the server then
+	 * answers extraction requests with 500
+	 */
+	public boolean isFailed() {
+		return failure != null;
+	}
+
+	/**
+	 * Starts serving and loads the dictionaries in the background; the
+	 * server is ready when all of them are loaded.
+	 */
+	public void start() {
+		server.start();
+		LOGGER.log(Level.INFO, "Listening on " + server.getAddress());
+		Thread loader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (String language : languages) {
+						Extractor extractor = new Extractor(language, nKeyterms);
+						extractor.setConcatMultiWordUnits(concatMultiWordUnits);
+						extractor.setDiceThreshold(diceThreshold);
+						extractor.setCache(cache);
+						extractors.put(language, extractor);
+						LOGGER.log(Level.INFO, "Loaded reference dictionary for " + language);
+					}
+					ready = true;
+				} catch (IOException | RuntimeException e) {
+					LOGGER.log(Level.SEVERE, "Could not load reference dictionary", e);
+					Throwable cause = e.getCause() != null ? e.getCause() : e;
+					failure = e.getMessage() + (cause != e ? ": " + cause.getMessage() : "");
+				}
+			}
+		}, "keyterms-loader");
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	/**
+	 * Stops accepting requests and waits up to the given delay for running
+	 * exchanges.
+	 */
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		workers.shutdown();
+	}
+
+	private class ExtractionHandler implements HttpHandler {
+
+		@Override
+		public void handle(final HttpExchange exchange) throws IOException {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				respond(exchange, 405, error("Use POST"));
+				return;
+			}
+			if (!ready) {
+				if (failure != null) {
+					respond(exchange, 500, error("Could not load reference dictionaries: " + failure));
+				} else {
+					respondBusy(exchange, error("Loading reference dictionaries"));
+				}
+				return;
+			}
+			try {
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							extract(exchange);
+						} catch (IOException e) {
+							LOGGER.log(Level.WARNING, "Could not answer request: " + e.getMessage());
+						} catch (RuntimeException e) {
+							LOGGER.log(Level.WARNING, "Extraction failed: " + e);
+							try {
+								respond(exchange, 500, error(String.valueOf(e.getMessage())));
+							} catch (IOException | RuntimeException ignored) {
+								// the response has been started already
+							}
+						} finally {
+							exchange.close();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				respondBusy(exchange, error("Too many requests"));
+			}
+		}
+	}
+
+	private void extract(HttpExchange exchange) throws IOException {
+		Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+		String language = parameters.containsKey("language") ? parameters.get("language") : languages.get(0);
+		Extractor extractor = extractors.get(language);
+		if (extractor == null) {
+			respond(exchange, 400, error("Language not configured: " + language));
+			return;
+		}
+		int n;
+		try {
+			n = parameters.containsKey("n") ? Integer.parseInt(parameters.get("n")) : nKeyterms;
+		} catch (NumberFormatException e) {
+			respond(exchange, 400, error("Invalid number of keyterms: " + parameters.get("n")));
+			return;
+		}
+
+		byte[] body = readBody(exchange.getRequestBody());
+		if (body == null) {
+			respond(exchange, 413, error("Request larger than " + MAX_REQUEST_SIZE + " bytes"));
+			return;
+		}
+		String text = new String(body, Charsets.UTF_8);
+		String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+
+		StringBuilder response = new StringBuilder();
+		response.append("{\"language\":");
+		Json.quote(response, language);
+		if (contentType != null && contentType.startsWith("application/json")) {
+			List<String> documents;
+			try {
+				documents = parseDocuments(text);
+			} catch (IllegalArgumentException e) {
+				respond(exchange, 400, error(e.getMessage()));
+				return;
+			}
+			response.append(",\"results\":[");
+			for (int i = 0; i < documents.size(); i++) {
+				if (i > 0) response.append(',');
+				// the result is only written once the extraction succeeded
+				Map<String, Double> keyterms;
+				try {
+					keyterms = extractor.extractRanking(documents.get(i)).top(n);
+				} catch (RuntimeException e) {
+					LOGGER.log(Level.WARNING, "Extraction failed for document " + i + ": " + e);
+					response.append(error(String.valueOf(e.getMessage())));
+					continue;
+				}
+				response.append('{');
+				Json.appendKeyterms(response, keyterms);
+				response.append('}');
+			}
+			response.append(']');
+		} else {
+			response.append(',');
+			Json.appendKeyterms(response, extractor.extractRanking(text).top(n));
+		}
+		response.append('}');
+		respond(exchange, 200, response.toString());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<String> parseDocuments(String text) {
+		Object json = Json.parse(text);
+		if (json instanceof Map) {
+			json = ((Map<String, Object>) json).get("documents");
+		}
+		if (!(json instanceof List)) {
+			throw new IllegalArgumentException("Expected an array of documents");
+		}
+		List<String> documents = new ArrayList<String>();
+		for (Object document : (List<Object>) json) {
+			if (!(document instanceof String)) {
+				throw new IllegalArgumentException("Documents must be strings");
+			}
+			documents.add((String) document);
+		}
+		return documents;
+	}
+
+	private static Map<String, String> parseQuery(String query) throws IOException {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (query == null) {
+			return parameters;
+		}
+		for (String parameter : query.split("&")) {
+			int eq = parameter.indexOf('=');
+			if (eq > 0) {
+				parameters.put(URLDecoder.decode(parameter.substring(0, eq), "UTF-8"), 
+						URLDecoder.decode(parameter.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return parameters;
+	}
+
+	// null if the body exceeds the maximum request size
+	private static byte[] readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			if (body.size() + n > MAX_REQUEST_SIZE) {
+				return null;
+			}
+			body.write(buffer, 0, n);
+		}
+		return body.toByteArray();
+	}
+
+	private static String error(String message) {
+		StringBuilder sb = new StringBuilder("{\"error\":");
+		Json.quote(sb, message);
+		return sb.append('}').toString();
+	}
+
+	private static void respondBusy(HttpExchange exchange, String body) throws IOException {
+		exchange.getResponseHeaders().set("Retry-After", "1");
+		respond(exchange, 503, body);
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(Charsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+package uhh_lt.keyterms;
+
+import java.util.Arrays;
+
+/**
+ * Counts of n-grams of up to four type ids in an open-addressing hash table.
+ * Each n-gram is packed into two longs: one 32 bit slot per type (id + 1,
+ * 0 for no type) with the highest bit set if a hyphen precedes the type.
+ * The stem ids of the first occurrence of each n-gram are kept as well.
+ */
+class NGramTable {
+
+	static final int MAX_LENGTH = 4;
+
+	private static final int HYPHEN = 1 << 31;
+	private static final int EMPTY = -1;
+
+	private long[] keys;
+	private long[] counts;
+	private int[] stems;
+	private int[] hashes;
+	private int[] table;
+	private int mask;
+	private int size;
+
+	NGramTable() {
+		this(1024);
+	}
+
+	NGramTable(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+		int entries = Math.max(16, expectedSize);
+		this.keys = new long[2 * entries];
+		this.counts = new long[entries];
+		this.stems = new int[MAX_LENGTH * entries];
+		this.hashes = new int[entries];
+		this.table = new int[capacity];
+		this.mask = capacity - 1;
+		Arrays.fill(table, EMPTY);
+	}
+
+	private static int slot(int[] types, boolean[] hyphens, int from, int to, int i) {
+		int pos = from + i;
+		if (pos >= to) return 0;
+		return (types[pos] + 1) | (i > 0 && hyphens[pos] ? HYPHEN : 0);
+	}
+
+	private static long pack(int slot1, int slot2) {
+		return ((long) slot1 << 32) | (slot2 & 0xFFFFFFFFL);
+	}
+
+	private static int hash(long key1, long key2) {
+		long hash = (key1 * 0x9E3779B97F4A7C15L + key2) * 0xC2B2AE3D27D4EB4FL;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * Adds to the count of the n-gram types[from, to), hyphens[i] marks a
+	 * hyphen before types[i]. The stems are kept if the n-gram is new.
+	 */
+	void add(int[] types, int[] stems, boolean[] hyphens, int from, int to, long count) {
+		long key1 = pack(slot(types, hyphens, from, to, 0), slot(types, hyphens, from, to, 1));
+		long key2 = pack(slot(types, hyphens, from, to, 2), slot(types, hyphens, from, to, 3));
+		int hash = hash(key1, key2);
+		int i = hash & mask;
+		for (; ; i = (i + 1) & mask) {
+			int id = table[i];
+			if (id == EMPTY) break;
+			if (hashes[id] == hash && keys[2 * id] == key1 && keys[2 * id + 1] == key2) {
+				counts[id] += count;
+				return;
+			}
+		}
+		int id = size++;
+		if (id == counts.length) {
+			int entries = id * 2;
+			this.keys = Arrays.copyOf(this.keys, 2 * entries);
+			this.counts = Arrays.copyOf(this.counts, entries);
+			this.stems = Arrays.copyOf(this.stems, MAX_LENGTH * entries);
+			this.hashes = Arrays.copyOf(this.hashes, entries);
+		}
+		keys[2 * id] = key1;
+		keys[2 * id + 1] = key2;
+		counts[id] = count;
+		hashes[id] = hash;
+		for (int n = 0; n < to - from; n++) {
+			this.stems[MAX_LENGTH * id + n] = stems[from + n];
+		}
+		table[i] = id;
+		if (size * 2 > table.length) {
+			rehash(table.length * 2);
+		}
+	}
+
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		mask = capacity - 1;
+		Arrays.fill(table, EMPTY);
+		for (int id = 0; id < size; id++) {
+			int i = hashes[id] & mask;
+			while (table[i] != EMPTY) {
+				i = (i + 1) & mask;
+			}
+			table[i] = id;
+		}
+	}
+
+	private int getSlot(int id, int i) {
+		long key = keys[2 * id + i / 2];
+		return (int) (i % 2 == 0 ? key >>> 32 : key);
+	}
+
+	int size() {
+		return size;
+	}
+
+	long getCount(int id) {
+		return counts[id];
+	}
+
+	int getLength(int id) {
+		int length = 0;
+		while (length < MAX_LENGTH && getSlot(id, length) != 0) length++;
+		return length;
+	}
+
+	int getType(int id, int i) {
+		return (getSlot(id, i) & ~HYPHEN) - 1;
+	}
+
+	int getStem(int id, int i) {
+		return stems[MAX_LENGTH * id + i];
+	}
+
+	boolean isHyphenated(int id, int i) {
+		return (getSlot(id, i) & HYPHEN) != 0;
+	}
+
+}
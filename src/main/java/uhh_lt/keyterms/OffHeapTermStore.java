@@ -0,0 +1,345 @@
+package uhh_lt.keyterms;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Off-heap term store for reference dictionaries.
+ *
+ * The terms are kept as UTF-8 keys, with their counts, in one direct
+ * buffer and are found through an open-addressing hash index (linear
+ * probing) in the same buffer. Apart from the buffer object nothing is on
+ * the heap, so a resident reference leaves the garbage collector almost
+ * nothing to scan. A lookup hashes the string (its hash code is cached) and
+ * compares its characters with the UTF-8 key in place, without encoding
+ * the string.
+ *
+ * An optional Bloom filter in front of the index rejects most terms which
+ * are not in the reference, e.g. the rare types of a target text, without
+ * probing the index. It is blocked: all bits of a term are in one 64 bit
+ * word, so a test reads a single word.
+ *
+ * <pre>
+ * int[]  n + 1 key offsets (relative to the key section)
+ * long[] n type counts
+ * long[] n stem counts
+ * int[]  n stem-to-type ids (-1 if the term is no stem)
+ * byte[] (n + 7) / 8 stopword flags
+ * long[] index slots (hash and id, or -1), a power of two of at least 2n
+ * long[] Bloom filter bits (a power of two, if any)
+ * byte[] UTF-8 keys
+ * </pre>
+ *
+ * Ids are the ones of the source store. The buffer is only read with
+ * absolute gets, so concurrent lookups are safe.
+ */
+class OffHeapTermStore implements TermStore {
+
+	/** move reference dictionaries off the heap (true or false) */
+	public static final String PROPERTY = "keyterms.offheap";
+	/** bits per term of the Bloom filter, 0 for none */
+	public static final String BLOOM_PROPERTY = "keyterms.offheap.bloom";
+
+	private static final long EMPTY = -1L;
+
+	private final ByteBuffer buffer;
+	private final int size;
+	private final int mask;
+	private final int bloomWordMask;
+	private final int bloomHashes;
+	private final int typeCount;
+	private final int stemCount;
+	private final int stopwordCount;
+
+	private final int offsetsPosition;
+	private final int typeCountsPosition;
+	private final int stemCountsPosition;
+	private final int stemTypesPosition;
+	private final int stopwordsPosition;
+	private final int indexPosition;
+	private final int bloomPosition;
+	private final int keysPosition;
+
+	private OffHeapTermStore(TermStore source, int bloomBitsPerTerm) {
+		this.size = source.size();
+		this.typeCount = source.getTypeCount();
+		this.stemCount = source.getStemCount();
+		this.stopwordCount = source.getStopwordCount();
+		int capacity = Integer.highestOneBit(Math.max(16, size * 2 - 1)) << 1;
+		this.mask = capacity - 1;
+		int bloomWords = 0;
+		if (bloomBitsPerTerm > 0) {
+			long bits = Math.max(64L, (long) size * bloomBitsPerTerm);
+			bloomWords = (int) (Long.highestOneBit(Math.min(bits, 1L << 31) - 1) << 1 >>> 6);
+			bloomWords = Math.max(1, bloomWords);
+		}
+		// word index mask, or -1 without filter
+		this.bloomWordMask = bloomWords - 1;
+		// k = m / n * ln 2 hash functions are optimal, with m rounded up to a
+		// power of two; more than 8 bits in one word let more terms through
+		this.bloomHashes = (int) Math.max(1, Math.min(8, Math.round(64.0 * bloomWords / Math.max(1, size) * Math.log(2))));
+
+		long keyLength = 0;
+		for (int id = 0; id < size; id++) {
+			keyLength += utf8Length(source.getTerm(id));
+		}
+		this.offsetsPosition = 0;
+		this.typeCountsPosition = offsetsPosition + 4 * (size + 1);
+		this.stemCountsPosition = typeCountsPosition + 8 * size;
+		this.stemTypesPosition = stemCountsPosition + 8 * size;
+		this.stopwordsPosition = stemTypesPosition + 4 * size;
+		// 8 byte aligned, for the longs of the index and the Bloom filter
+		this.indexPosition = (stopwordsPosition + (size + 7) / 8 + 7) & ~7;
+		this.bloomPosition = indexPosition + 8 * capacity;
+		this.keysPosition = bloomPosition + 8 * bloomWords;
+		if (keysPosition + keyLength > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Dictionary too large for an off-heap store: " + size + " terms");
+		}
+		this.buffer = ByteBuffer.allocateDirect((int) (keysPosition + keyLength)).order(ByteOrder.nativeOrder());
+
+		for (int i = 0; i < capacity; i++) {
+			buffer.putLong(indexPosition + 8 * i, EMPTY);
+		}
+		int offset = 0;
+		for (int id = 0; id < size; id++) {
+			String term = source.getTerm(id);
+			int hash = mix(term.hashCode());
+			buffer.putInt(offsetsPosition + 4 * id, offset);
+			offset = encode(term, keysPosition + offset) - keysPosition;
+			buffer.putLong(typeCountsPosition + 8 * id, source.getTypeFrequency(id));
+			buffer.putLong(stemCountsPosition + 8 * id, source.getStemFrequency(id));
+			buffer.putInt(stemTypesPosition + 4 * id, source.getStemType(id));
+			if (source.isStopword(id)) {
+				int position = stopwordsPosition + (id >>> 3);
+				buffer.put(position, (byte) (buffer.get(position) | (1 << (id & 7))));
+			}
+			int i = hash & mask;
+			while (buffer.getLong(indexPosition + 8 * i) != EMPTY) {
+				i = (i + 1) & mask;
+			}
+			buffer.putLong(indexPosition + 8 * i, slot(hash, id));
+			if (bloomWordMask >= 0) {
+				long bloomHash = bloomHash(hash);
+				int position = bloomPosition + 8 * bloomWord(bloomHash);
+				buffer.putLong(position, buffer.getLong(position) | bloomBits(bloomHash));
+			}
+		}
+		buffer.putInt(offsetsPosition + 4 * size, offset);
+	}
+
+	/**
+	 * Copies a store off the heap.
+	 *
+	 * @param bloomBitsPerTerm size of the Bloom filter, 0 for none; it is
+	 * rounded up to a power of two (10 bits let 0.5 to 2% of the absent terms
+	 * through)
+	 */
+	static OffHeapTermStore copyOf(TermStore source, int bloomBitsPerTerm) {
+		return new OffHeapTermStore(source, bloomBitsPerTerm);
+	}
+
+	private static long slot(int hash, int id) {
+		return ((long) hash << 32) | id;
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	// 64 bit hash of the Bloom filter (murmur3 finalizer)
+	private static long bloomHash(int hash) {
+		long h = hash;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+
+	private int bloomWord(long bloomHash) {
+		return (int) (bloomHash >>> 32) & bloomWordMask;
+	}
+
+	// the k bits of a term in its word, by double hashing
+	private long bloomBits(long bloomHash) {
+		long bits = 0L;
+		int step = (int) (bloomHash >>> 6) | 1;
+		for (int k = 0, bit = (int) bloomHash; k < bloomHashes; k++, bit += step) {
+			bits |= 1L << bit;
+		}
+		return bits;
+	}
+
+	private boolean mightContain(int hash) {
+		long bloomHash = bloomHash(hash);
+		long bits = bloomBits(bloomHash);
+		return (buffer.getLong(bloomPosition + 8 * bloomWord(bloomHash)) & bits) == bits;
+	}
+
+	@Override
+	public long estimateHeapSize() {
+		// the fields and the buffer object
+		return 128;
+	}
+
+	@Override
+	public long getOffHeapSize() {
+		return buffer.capacity();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getId(String term) {
+		int hash = mix(term.hashCode());
+		if (bloomWordMask >= 0 && !mightContain(hash)) {
+			return -1;
+		}
+		for (int i = hash & mask; ; i = (i + 1) & mask) {
+			long slot = buffer.getLong(indexPosition + 8 * i);
+			if (slot == EMPTY) return -1;
+			if ((int) (slot >>> 32) == hash && matches((int) slot, term)) return (int) slot;
+		}
+	}
+
+	@Override
+	public String getTerm(int id) {
+		int start = keysPosition + buffer.getInt(offsetsPosition + 4 * id);
+		int end = keysPosition + buffer.getInt(offsetsPosition + 4 * (id + 1));
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public long getTypeFrequency(int id) {
+		return id < 0 ? 0 : buffer.getLong(typeCountsPosition + 8 * id);
+	}
+
+	@Override
+	public long getStemFrequency(int id) {
+		return id < 0 ? 0 : buffer.getLong(stemCountsPosition + 8 * id);
+	}
+
+	@Override
+	public int getStemType(int id) {
+		return id < 0 ? -1 : buffer.getInt(stemTypesPosition + 4 * id);
+	}
+
+	@Override
+	public boolean isStopword(int id) {
+		return id >= 0 && (buffer.get(stopwordsPosition + (id >>> 3)) & (1 << (id & 7))) != 0;
+	}
+
+	@Override
+	public int getTypeCount() {
+		return typeCount;
+	}
+
+	@Override
+	public int getStemCount() {
+		return stemCount;
+	}
+
+	@Override
+	public int getStopwordCount() {
+		return stopwordCount;
+	}
+
+	// UTF-8 as String.getBytes encodes it: unpaired surrogates become '?'
+
+	private static int utf8Length(String term) {
+		int length = 0;
+		for (int i = 0; i < term.length(); i++) {
+			char ch = term.charAt(i);
+			if (ch < 0x80) {
+				length += 1;
+			} else if (ch < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(ch) && i + 1 < term.length() && Character.isLowSurrogate(term.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else if (Character.isSurrogate(ch)) {
+				length += 1;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	// writes the key at a buffer position and returns the position after it
+	private int encode(String term, int position) {
+		for (int i = 0; i < term.length(); i++) {
+			char ch = term.charAt(i);
+			if (ch < 0x80) {
+				buffer.put(position++, (byte) ch);
+			} else if (ch < 0x800) {
+				buffer.put(position++, (byte) (0xC0 | (ch >> 6)));
+				buffer.put(position++, (byte) (0x80 | (ch & 0x3F)));
+			} else if (Character.isHighSurrogate(ch) && i + 1 < term.length() && Character.isLowSurrogate(term.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(ch, term.charAt(++i));
+				buffer.put(position++, (byte) (0xF0 | (codePoint >> 18)));
+				buffer.put(position++, (byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				buffer.put(position++, (byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				buffer.put(position++, (byte) (0x80 | (codePoint & 0x3F)));
+			} else if (Character.isSurrogate(ch)) {
+				buffer.put(position++, (byte) '?');
+			} else {
+				buffer.put(position++, (byte) (0xE0 | (ch >> 12)));
+				buffer.put(position++, (byte) (0x80 | ((ch >> 6) & 0x3F)));
+				buffer.put(position++, (byte) (0x80 | (ch & 0x3F)));
+			}
+		}
+		return position;
+	}
+
+	// compares the key of an id with a term, encoding the term on the fly
+	private boolean matches(int id, String term) {
+		int position = keysPosition + buffer.getInt(offsetsPosition + 4 * id);
+		int end = keysPosition + buffer.getInt(offsetsPosition + 4 * (id + 1));
+		int length = term.length();
+		// every char takes at least one byte
+		if (end - position < length) return false;
+		int i = 0;
+		// ASCII prefix
+		for (; i < length; i++) {
+			char ch = term.charAt(i);
+			if (ch >= 0x80) break;
+			if (buffer.get(position++) != (byte) ch) return false;
+		}
+		for (; i < length; i++) {
+			char ch = term.charAt(i);
+			if (ch < 0x80) {
+				if (position >= end || buffer.get(position++) != (byte) ch) return false;
+			} else if (ch < 0x800) {
+				if (position + 2 > end
+						|| buffer.get(position++) != (byte) (0xC0 | (ch >> 6))
+						|| buffer.get(position++) != (byte) (0x80 | (ch & 0x3F))) return false;
+			} else if (Character.isHighSurrogate(ch) && i + 1 < term.length() && Character.isLowSurrogate(term.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(ch, term.charAt(++i));
+				if (position + 4 > end
+						|| buffer.get(position++) != (byte) (0xF0 | (codePoint >> 18))
+						|| buffer.get(position++) != (byte) (0x80 | ((codePoint >> 12) & 0x3F))
+						|| buffer.get(position++) != (byte) (0x80 | ((codePoint >> 6) & 0x3F))
+						|| buffer.get(position++) != (byte) (0x80 | (codePoint & 0x3F))) return false;
+			} else if (Character.isSurrogate(ch)) {
+				if (position >= end || buffer.get(position++) != (byte) '?') return false;
+			} else {
+				if (position + 3 > end
+						|| buffer.get(position++) != (byte) (0xE0 | (ch >> 12))
+						|| buffer.get(position++) != (byte) (0x80 | ((ch >> 6) & 0x3F))
+						|| buffer.get(position++) != (byte) (0x80 | (ch & 0x3F))) return false;
+			}
+		}
+		return position == end;
+	}
+
+}
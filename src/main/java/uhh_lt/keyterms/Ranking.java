@@ -0,0 +1,157 @@
+package uhh_lt.keyterms;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Terms ranked by score: highest score first, ties in alphabetical order.
+ *
+ * The top k terms are selected with a bounded heap of term indices, in
+ * O(n log k) instead of sorting all terms. The iterator heapifies all terms
+ * once and orders them lazily, one heap removal per term that is read.
+ */
+public class Ranking implements Iterable<Map.Entry<String, Double>> {
+
+	private final String[] terms;
+	private final double[] scores;
+	private final int size;
+
+	public Ranking(String[] terms, double[] scores, int size) {
+		this.terms = terms;
+		this.scores = scores;
+		this.size = size;
+	}
+
+	public static Ranking of(Map<String, Double> scores) {
+		String[] terms = new String[scores.size()];
+		double[] values = new double[scores.size()];
+		int i = 0;
+		for (Map.Entry<String, Double> entry : scores.entrySet()) {
+			terms[i] = entry.getKey();
+			values[i] = entry.getValue();
+			i++;
+		}
+		return new Ranking(terms, values, i);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the approximate heap size in bytes, e.g. to bound a cache
+	 */
+	long estimateSize() {
+		long bytes = 32 + 16 + 8L * terms.length + 16 + 8L * scores.length;
+		for (int i = 0; i < size; i++) {
+			bytes += 56 + 2L * terms[i].length();
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the k best terms in rank order
+	 */
+	public LinkedHashMap<String, Double> top(int k) {
+		k = Math.max(0, Math.min(k, size));
+		// bounded heap with the worst of the best k terms at the root
+		int[] heap = new int[k];
+		int n = 0;
+		for (int i = 0; i < size && k > 0; i++) {
+			if (n < k) {
+				heap[n] = i;
+				siftUp(heap, n++, true);
+			} else if (precedes(i, heap[0])) {
+				heap[0] = i;
+				siftDown(heap, 0, n, true);
+			}
+		}
+		// remove the worst term until the heap is empty
+		int[] ranked = new int[n];
+		while (n > 0) {
+			ranked[--n] = heap[0];
+			heap[0] = heap[n];
+			siftDown(heap, 0, n, true);
+		}
+		LinkedHashMap<String, Double> top = new LinkedHashMap<String, Double>();
+		for (int i : ranked) {
+			top.put(terms[i], scores[i]);
+		}
+		return top;
+	}
+
+	/**
+	 * @return all terms in rank order
+	 */
+	public LinkedHashMap<String, Double> toMap() {
+		return top(size);
+	}
+
+	@Override
+	public Iterator<Map.Entry<String, Double>> iterator() {
+		// heap with the best term at the root
+		final int[] heap = new int[size];
+		for (int i = 0; i < size; i++) {
+			heap[i] = i;
+		}
+		for (int i = size / 2 - 1; i >= 0; i--) {
+			siftDown(heap, i, size, false);
+		}
+		return new Iterator<Map.Entry<String, Double>>() {
+			int n = size;
+
+			@Override
+			public boolean hasNext() {
+				return n > 0;
+			}
+
+			@Override
+			public Map.Entry<String, Double> next() {
+				if (n == 0) throw new NoSuchElementException();
+				int best = heap[0];
+				heap[0] = heap[--n];
+				siftDown(heap, 0, n, false);
+				return new AbstractMap.SimpleImmutableEntry<String, Double>(terms[best], scores[best]);
+			}
+		};
+	}
+
+	// true if term i ranks before term j
+	private boolean precedes(int i, int j) {
+		int cmp = Double.compare(scores[j], scores[i]);
+		return cmp != 0 ? cmp < 0 : terms[i].compareTo(terms[j]) < 0;
+	}
+
+	// heap order: the root ranks last (worstFirst) or first
+	private boolean above(int i, int j, boolean worstFirst) {
+		return worstFirst ? precedes(j, i) : precedes(i, j);
+	}
+
+	private void siftUp(int[] heap, int pos, boolean worstFirst) {
+		int item = heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (!above(item, heap[parent], worstFirst)) break;
+			heap[pos] = heap[parent];
+			pos = parent;
+		}
+		heap[pos] = item;
+	}
+
+	private void siftDown(int[] heap, int pos, int n, boolean worstFirst) {
+		int item = heap[pos];
+		int half = n >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			if (child + 1 < n && above(heap[child + 1], heap[child], worstFirst)) child++;
+			if (!above(heap[child], item, worstFirst)) break;
+			heap[pos] = heap[child];
+			pos = child;
+		}
+		heap[pos] = item;
+	}
+
+}
@@ -0,0 +1,325 @@
+package uhh_lt.keyterms;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds a reference resource (<code>type\tfrequency</code> per line, most
+ * frequent type first) from a corpus of any size, with the same counts as
+ * the frequency mode on the whole corpus.
+ *
+ * The corpus is read in chunks (see {@link DocumentReader}) which are
+ * tokenized and counted in parallel. The counts of a chunk are added to
+ * lock-striped shards; when the shards exceed the memory budget, they are
+ * written to disk as a run sorted by type. The runs are merged in a k-way
+ * merge, summing the counts of each type, and sorted by frequency the same
+ * way, spilling runs if needed.
+ *
+ * Sentence beginnings are normalized with the comparison dictionary like
+ * {@link Document#normalizeSentenceBeginning(Dictionary)}. The first token of
+ * a chunk depends on the last token of the previous chunk, so it is counted
+ * once the chunks before it are done.
+ */
+public class ReferenceBuilder {
+
+	public static final String THREADS_PROPERTY = "keyterms.builder.threads";
+	public static final String MEMORY_PROPERTY = "keyterms.builder.memory";
+	public static final int CHUNK_SIZE = 1 << 20;
+
+	private final static Logger LOGGER = 
+			Logger.getLogger(Extractor.class.getName());
+
+	private static final int SHARDS = 64;
+
+	private final String language;
+	private final Dictionary comparison;
+	private final int threads;
+	private long memoryBudget;
+	private long minFrequency = 1;
+	private Path temporaryDirectory = null;
+
+	public ReferenceBuilder(String language, Dictionary comparison) {
+		this(language, comparison, Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+	}
+
+	public ReferenceBuilder(String language, Dictionary comparison, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be positive");
+		}
+		this.language = language;
+		this.comparison = comparison;
+		this.threads = threads;
+		// megabytes, default: a quarter of the heap
+		this.memoryBudget = Long.getLong(MEMORY_PROPERTY, Runtime.getRuntime().maxMemory() / 4 >> 20) << 20;
+	}
+
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * @param memoryBudget estimated heap size in bytes of the counts kept
+	 * in memory before they are spilled to disk
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	public long getMinFrequency() {
+		return minFrequency;
+	}
+
+	/**
+	 * @param minFrequency types with a lower frequency are left out
+	 */
+	public void setMinFrequency(long minFrequency) {
+		this.minFrequency = minFrequency;
+	}
+
+	public void setTemporaryDirectory(Path temporaryDirectory) {
+		this.temporaryDirectory = temporaryDirectory;
+	}
+
+	/**
+	 * Counts the types of UTF-8 text files and writes them to the output.
+	 *
+	 * @return the number of types written
+	 */
+	public long build(List<Path> files, Writer out) throws IOException {
+		final Counts counts = new Counts();
+		final Boundaries boundaries = new Boundaries(counts);
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final Semaphore permits = new Semaphore(2 * threads);
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		final int[] chunks = { 0 };
+		try {
+			new DocumentReader(language, CHUNK_SIZE, DocumentReader.DEFAULT_QUEUE_CAPACITY).read(files, new DocumentReader.ChunkHandler() {
+				@Override
+				public void chunk(CharBuffer chunk) throws IOException {
+					if (failure.get() != null) {
+						throw new IOException(failure.get());
+					}
+					try {
+						permits.acquire();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while counting");
+					}
+					final int index = chunks[0]++;
+					final String text = chunk.toString();
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								countChunk(index, text, counts, boundaries);
+							} catch (IOException | RuntimeException e) {
+								failure.compareAndSet(null, e);
+							} finally {
+								permits.release();
+							}
+						}
+					});
+				}
+			});
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while counting");
+		} finally {
+			executor.shutdownNow();
+		}
+		if (failure.get() != null) {
+			throw new IOException("Counting failed", failure.get());
+		}
+
+		// sum the counts of each type, then order them by frequency
+		final SortedRuns byFrequency = new SortedRuns(SortedRuns.FREQUENCY_ORDER, memoryBudget, temporaryDirectory);
+		final BufferedWriter writer = new BufferedWriter(out);
+		final long[] written = { 0 };
+		try {
+			counts.flush();
+			LOGGER.log(Level.INFO, "Counted " + chunks[0] + " chunks, merging " + counts.runs.size() + " runs");
+			counts.runs.merge(new SortedRuns.Handler() {
+				@Override
+				public void entry(String type, long count) throws IOException {
+					if (count >= minFrequency) {
+						byFrequency.add(type, count);
+					}
+				}
+			});
+			byFrequency.merge(new SortedRuns.Handler() {
+				@Override
+				public void entry(String type, long count) throws IOException {
+					writer.write(type + "\t" + count + "\n");
+					written[0]++;
+				}
+			});
+			writer.flush();
+		} finally {
+			counts.runs.delete();
+			byFrequency.delete();
+		}
+		return written[0];
+	}
+
+	private void countChunk(int index, String text, Counts counts, Boundaries boundaries) throws IOException {
+		List<String> tokens = new Document(language).tokenize(text);
+		Map<String, long[]> local = new HashMap<String, long[]>();
+		String first = null;
+		String previous = null;
+		for (String token : tokens) {
+			if (token.isEmpty()) continue;
+			if (first == null) {
+				first = token;
+			} else {
+				count(local, normalize(previous, token));
+			}
+			previous = token;
+		}
+		counts.add(local);
+		boundaries.complete(index, first, previous);
+	}
+
+	// the sentence beginning rule of Document.normalizeSentenceBeginning
+	private String normalize(String previous, String token) {
+		boolean sentenceStart = previous.isEmpty() 
+				|| (previous.length() == 1 && ".?!".indexOf(previous.charAt(0)) >= 0);
+		if (sentenceStart && Character.isUpperCase(token.charAt(0))) {
+			String normalized = token.toLowerCase();
+			if (comparison.getTypeFrequency(normalized) > comparison.getTypeFrequency(token)) {
+				return normalized;
+			}
+		}
+		return token;
+	}
+
+	private static void count(Map<String, long[]> counts, String token) {
+		String type = Dictionary.clean(token);
+		if (type.isEmpty()) return;
+		long[] count = counts.get(type);
+		if (count == null) {
+			counts.put(type, new long[] { 1 });
+		} else {
+			count[0]++;
+		}
+	}
+
+	/**
+	 * Counts the first tokens of the chunks in chunk order.
+	 */
+	private class Boundaries {
+
+		private final Counts counts;
+		private final Map<Integer, String[]> completed = new HashMap<Integer, String[]>();
+		private int next = 0;
+		// the empty string marks the start of the corpus
+		private String lastToken = "";
+
+		Boundaries(Counts counts) {
+			this.counts = counts;
+		}
+
+		void complete(int index, String first, String last) throws IOException {
+			Map<String, long[]> local = new HashMap<String, long[]>();
+			synchronized (this) {
+				completed.put(index, new String[] { first, last });
+				for (String[] chunk = completed.remove(next); chunk != null; chunk = completed.remove(next)) {
+					// a chunk without tokens keeps the last token of the chunk before
+					if (chunk[0] != null) {
+						count(local, normalize(lastToken, chunk[0]));
+						lastToken = chunk[1];
+					}
+					next++;
+				}
+			}
+			counts.add(local);
+		}
+	}
+
+	/**
+	 * Counts by type in lock-striped shards, spilled to sorted runs when the
+	 * memory budget is exceeded.
+	 */
+	private class Counts {
+
+		private final List<Map<String, long[]>> shards = new ArrayList<Map<String, long[]>>(SHARDS);
+		private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		private final AtomicLong size = new AtomicLong();
+		final SortedRuns runs = new SortedRuns(SortedRuns.TYPE_ORDER, memoryBudget, temporaryDirectory);
+
+		Counts() {
+			for (int i = 0; i < SHARDS; i++) {
+				shards.add(new HashMap<String, long[]>());
+			}
+		}
+
+		void add(Map<String, long[]> counts) throws IOException {
+			lock.readLock().lock();
+			try {
+				for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+					String type = entry.getKey();
+					Map<String, long[]> shard = shards.get((type.hashCode() & 0x7fffffff) % SHARDS);
+					synchronized (shard) {
+						long[] count = shard.get(type);
+						if (count == null) {
+							shard.put(type, entry.getValue());
+							size.addAndGet(SortedRuns.estimateSize(type));
+						} else {
+							count[0] += entry.getValue()[0];
+						}
+					}
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+			if (size.get() > memoryBudget) {
+				spill(false);
+			}
+		}
+
+		// moves the counts in memory into a run, if over budget (or always)
+		private void spill(boolean always) throws IOException {
+			lock.writeLock().lock();
+			try {
+				if (!always && size.get() <= memoryBudget) return;
+				List<SortedRuns.Entry> entries = new ArrayList<SortedRuns.Entry>();
+				for (Map<String, long[]> shard : shards) {
+					for (Map.Entry<String, long[]> entry : shard.entrySet()) {
+						entries.add(new SortedRuns.Entry(entry.getKey(), entry.getValue()[0]));
+					}
+					shard.clear();
+				}
+				size.set(0);
+				runs.spill(entries);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		// the counts in memory become the last run
+		void flush() throws IOException {
+			if (size.get() > 0) {
+				spill(true);
+			}
+		}
+	}
+
+}
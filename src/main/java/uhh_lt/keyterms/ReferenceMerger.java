@@ -0,0 +1,169 @@
+package uhh_lt.keyterms;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Composes a reference resource from several <code>type\tfrequency</code>
+ * lists, e.g. domain specific ones, each with a weight: the frequency of a
+ * type is the sum of its weighted frequencies in all lists, rounded once
+ * after summing.
+ *
+ * The lists are streamed into sorted runs within a memory budget (see
+ * {@link ReferenceBuilder#MEMORY_PROPERTY}) and summed in one k-way merge,
+ * so memory does not grow with the size of the lists. The result is
+ * written in alphabetical order or loaded directly as a {@link Dictionary}.
+ *
+ * <pre>
+ * Dictionary comparison = new ReferenceMerger()
+ *         .add(Paths.get("news.tsv"), 1.0)
+ *         .add(Paths.get("legal.tsv"), 0.5)
+ *         .toDictionary("eng");
+ * </pre>
+ */
+public class ReferenceMerger {
+
+	private final static Logger LOGGER = 
+			Logger.getLogger(Extractor.class.getName());
+
+	// weighted frequencies are summed in fixed point, in millionths
+	private static final long SCALE = 1000000L;
+
+	private final List<Source> sources = new ArrayList<Source>();
+	private long memoryBudget = Long.getLong(ReferenceBuilder.MEMORY_PROPERTY, 
+			Runtime.getRuntime().maxMemory() / 4 >> 20) << 20;
+	private Path temporaryDirectory = null;
+
+	public ReferenceMerger add(Path file, double weight) {
+		sources.add(new Source(file, null, weight));
+		return this;
+	}
+
+	/**
+	 * Adds the internal reference list of a language.
+	 */
+	public ReferenceMerger addInternal(String language, double weight) {
+		sources.add(new Source(null, language + ".tsv", weight));
+		return this;
+	}
+
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	public void setTemporaryDirectory(Path temporaryDirectory) {
+		this.temporaryDirectory = temporaryDirectory;
+	}
+
+	/**
+	 * Writes the merged list, one <code>type\tfrequency</code> per line.
+	 *
+	 * @return the number of types written
+	 */
+	public long write(Writer out) throws IOException {
+		final BufferedWriter writer = new BufferedWriter(out);
+		final long[] written = { 0 };
+		merge(new SortedRuns.Handler() {
+			@Override
+			public void entry(String type, long count) throws IOException {
+				writer.write(type + "\t" + count + "\n");
+				written[0]++;
+			}
+		});
+		writer.flush();
+		return written[0];
+	}
+
+	/**
+	 * @return a comparison dictionary of the merged lists, stemmed for the
+	 * given language
+	 */
+	public Dictionary toDictionary(String language) throws IOException {
+		return new Dictionary(language, this);
+	}
+
+	/**
+	 * Hands the merged types in alphabetical order to the handler; types
+	 * whose summed weighted frequency rounds to zero are left out.
+	 */
+	void merge(final SortedRuns.Handler handler) throws IOException {
+		SortedRuns runs = new SortedRuns(SortedRuns.TYPE_ORDER, memoryBudget, temporaryDirectory);
+		try {
+			for (Source source : sources) {
+				source.read(runs);
+			}
+			runs.merge(new SortedRuns.Handler() {
+				@Override
+				public void entry(String type, long scaledCount) throws IOException {
+					long count = (scaledCount + SCALE / 2) / SCALE;
+					if (count > 0) {
+						handler.entry(type, count);
+					}
+				}
+			});
+		} finally {
+			runs.delete();
+		}
+	}
+
+	private static class Source {
+
+		private final Path file;
+		private final String resource;
+		private final double weight;
+
+		Source(Path file, String resource, double weight) {
+			if (weight < 0 || Double.isNaN(weight)) {
+				throw new IllegalArgumentException("Weight must not be negative: " + weight);
+			}
+			this.file = file;
+			this.resource = resource;
+			this.weight = weight;
+		}
+
+		void read(SortedRuns runs) throws IOException {
+			InputStream stream = file != null 
+					? Files.newInputStream(file) 
+					: Resources.open(resource);
+			if (stream == null) {
+				throw new IOException("Reference resource not found: " + resource);
+			}
+			int lineCounter = 0;
+			try (BufferedReader br = new BufferedReader(new InputStreamReader(stream, Charsets.UTF_8))) {
+				String line;
+				while ((line = br.readLine()) != null) {
+					lineCounter++;
+					if (line.isEmpty()) continue;
+					String[] entry = line.split("\t");
+					if (entry.length == 2) {
+						double scaledCount = Long.parseLong(entry[1]) * weight * SCALE;
+						if (scaledCount >= Long.MAX_VALUE / 64) {
+							throw new IOException("Weighted frequency too large at line " + lineCounter + " of " 
+									+ (file != null ? file : resource));
+						}
+						runs.add(entry[0], Math.round(scaledCount));
+					} else {
+						LOGGER.log(Level.SEVERE, "Invalid reference file format at line " + lineCounter + " of " 
+								+ (file != null ? file : resource));
+					}
+				}
+			} catch (NumberFormatException e) {
+				throw new IOException("Reference resource malformed at line " + lineCounter + " of " 
+						+ (file != null ? file : resource));
+			}
+		}
+	}
+
+}
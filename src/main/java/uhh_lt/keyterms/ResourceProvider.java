@@ -0,0 +1,23 @@
+package uhh_lt.keyterms;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Provides reference resources of languages, e.g. from a language pack or a
+ * download cache. Providers are found with {@link java.util.ServiceLoader}:
+ * a pack jar lists its implementation in
+ * <code>META-INF/services/uhh_lt.keyterms.ResourceProvider</code>.
+ *
+ * @see Resources
+ */
+public interface ResourceProvider {
+
+	/**
+	 * @param name the resource name, e.g. <code>eng.tsv</code> or
+	 * <code>eng.stopwords</code>
+	 * @return the uncompressed resource, or null if it is not provided
+	 */
+	InputStream open(String name) throws IOException;
+
+}
@@ -0,0 +1,125 @@
+package uhh_lt.keyterms;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reference resources of the languages (<code>&lt;language&gt;.tsv</code>,
+ * <code>&lt;language&gt;.stopwords</code> and <code>all.stopwords</code>),
+ * looked up on demand in this order:
+ * <ol>
+ * <li>the directory in the system property keyterms.resources,</li>
+ * <li>the {@link ResourceProvider}s registered with the ServiceLoader,</li>
+ * <li><code>wordlists/</code> on the class path (the bundled resources, or
+ * pack jars that hold only some languages).</li>
+ * </ol>
+ * A directory or class path resource may also be gzip-compressed, with the
+ * extension <code>.gz</code>. Only the resources of the languages in use
+ * are read.
+ *
+ * The main method compresses the reference lists of a directory into packs:
+ * <code>Resources &lt;output directory&gt; &lt;wordlist directory&gt;</code>.
+ */
+public final class Resources {
+
+	public static final String DIRECTORY_PROPERTY = "keyterms.resources";
+	public static final String CLASSPATH_DIRECTORY = "wordlists/";
+	public static final String COMPRESSED_EXTENSION = ".gz";
+
+	private final static Logger LOGGER =
+			Logger.getLogger(Resources.class.getName());
+
+	private static volatile List<ResourceProvider> providers = null;
+
+	private Resources() {
+	}
+
+	/**
+	 * @return the uncompressed resource, or null if there is none
+	 */
+	public static InputStream open(String name) throws IOException {
+		String directory = System.getProperty(DIRECTORY_PROPERTY);
+		if (directory != null) {
+			File file = new File(directory, name);
+			if (file.isFile()) {
+				LOGGER.log(Level.FINE, "Reading resource " + file.getPath());
+				return new FileInputStream(file);
+			}
+			File compressed = new File(directory, name + COMPRESSED_EXTENSION);
+			if (compressed.isFile()) {
+				LOGGER.log(Level.FINE, "Reading resource " + compressed.getPath());
+				return new GZIPInputStream(new FileInputStream(compressed), 1 << 16);
+			}
+		}
+		for (ResourceProvider provider : getProviders()) {
+			InputStream stream = provider.open(name);
+			if (stream != null) {
+				LOGGER.log(Level.FINE, "Reading resource " + name + " from " + provider.getClass().getName());
+				return stream;
+			}
+		}
+		ClassLoader classLoader = Resources.class.getClassLoader();
+		InputStream stream = classLoader.getResourceAsStream(CLASSPATH_DIRECTORY + name);
+		if (stream != null) {
+			return stream;
+		}
+		stream = classLoader.getResourceAsStream(CLASSPATH_DIRECTORY + name + COMPRESSED_EXTENSION);
+		return stream == null ? null : new GZIPInputStream(stream, 1 << 16);
+	}
+
+	private static List<ResourceProvider> getProviders() {
+		List<ResourceProvider> loaded = providers;
+		if (loaded == null) {
+			synchronized (Resources.class) {
+				loaded = providers;
+				if (loaded == null) {
+					loaded = new ArrayList<ResourceProvider>();
+					for (ResourceProvider provider : ServiceLoader.load(ResourceProvider.class)) {
+						LOGGER.log(Level.FINE, "Found resource provider " + provider.getClass().getName());
+						loaded.add(provider);
+					}
+					providers = loaded;
+				}
+			}
+		}
+		return loaded;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("usage: Resources <output directory> <wordlist directory>");
+			System.exit(1);
+		}
+		File directory = new File(args[0]);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create directory: " + directory);
+		}
+		String[] files = new File(args[1]).list();
+		if (files == null) {
+			throw new IOException("Not a directory: " + args[1]);
+		}
+		Arrays.sort(files);
+		for (String name : files) {
+			if (!name.endsWith(".tsv")) continue;
+			File pack = new File(directory, name + COMPRESSED_EXTENSION);
+			try (OutputStream out = new GZIPOutputStream(new FileOutputStream(pack), 1 << 16)) {
+				Files.copy(new File(args[1], name).toPath(), out);
+			}
+			LOGGER.log(Level.INFO, "Packed " + pack.getPath());
+		}
+	}
+
+}
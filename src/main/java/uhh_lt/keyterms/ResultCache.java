@@ -0,0 +1,159 @@
+package uhh_lt.keyterms;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Cache of extraction results for repeated documents, see
+ * {@link Extractor#setCache(ResultCache)}. A result is found by the 128 bit
+ * murmur3 hash of the document text together with the language, the
+ * comparison dictionary (by its instance id, so that the cache does not keep
+ * evicted dictionaries alive) and the parameters that change the ranking:
+ * multi-word concatenation and dice threshold. The whole ranking is cached,
+ * so the number of keyterms requested is not part of the key.
+ *
+ * The least recently used rankings are evicted when their estimated size
+ * exceeds the memory bound (keyterms.cache.size in MB, default: 64), and
+ * every ranking expires a fixed time after it was computed
+ * (keyterms.cache.ttl in seconds, default: 3600). Documents that are
+ * computed concurrently are extracted once.
+ */
+public class ResultCache {
+
+	public static final String SIZE_PROPERTY = "keyterms.cache.size";
+	public static final String TTL_PROPERTY = "keyterms.cache.ttl";
+
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final Cache<Key, Ranking> cache;
+
+	public ResultCache() {
+		this(Long.getLong(SIZE_PROPERTY, 64) << 20, Long.getLong(TTL_PROPERTY, 3600), TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @param maximumBytes bound of the estimated size of the cached rankings
+	 * @param ttl time after which a ranking is extracted again
+	 */
+	public ResultCache(long maximumBytes, long ttl, TimeUnit unit) {
+		this.cache = CacheBuilder.newBuilder()
+				.maximumWeight(maximumBytes)
+				.weigher(new Weigher<Key, Ranking>() {
+					@Override
+					public int weigh(Key key, Ranking ranking) {
+						return (int) Math.min(Integer.MAX_VALUE, Key.SIZE + ranking.estimateSize());
+					}
+				})
+				.expireAfterWrite(ttl, unit)
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * @return hits, misses, evictions and load times since the cache was created
+	 */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public double getHitRate() {
+		return cache.stats().hitRate();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	static Key key(String document, Extractor.Settings settings) {
+		HashCode hash = HASH.newHasher()
+				.putInt(document.length())
+				.putUnencodedChars(document)
+				.hash();
+		return new Key(hash, false, settings);
+	}
+
+	static Key key(List<String> tokens, Extractor.Settings settings) {
+		Hasher hasher = HASH.newHasher().putInt(tokens.size());
+		for (String token : tokens) {
+			hasher.putInt(token.length()).putUnencodedChars(token);
+		}
+		return new Key(hasher.hash(), true, settings);
+	}
+
+	Ranking get(Key key, Callable<Ranking> extraction) {
+		try {
+			return cache.get(key, extraction);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (UncheckedExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	static final class Key {
+
+		// estimated size of a key with its hash and cache entry
+		static final long SIZE = 160;
+
+		private final long hash1;
+		private final long hash2;
+		private final boolean tokens;
+		private final String language;
+		// the comparison dictionary by identity, without referencing it
+		private final long comparisonId;
+		private final boolean concatMultiWordUnits;
+		private final double diceThreshold;
+
+		Key(HashCode hash, boolean tokens, Extractor.Settings settings) {
+			byte[] bytes = hash.asBytes();
+			long hash1 = 0;
+			long hash2 = 0;
+			for (int i = 0; i < 8; i++) {
+				hash1 = (hash1 << 8) | (bytes[i] & 0xFF);
+				hash2 = (hash2 << 8) | (bytes[i + 8] & 0xFF);
+			}
+			this.hash1 = hash1;
+			this.hash2 = hash2;
+			this.tokens = tokens;
+			this.language = settings.language;
+			this.comparisonId = settings.comparison.getInstanceId();
+			this.concatMultiWordUnits = settings.concatMultiWordUnits;
+			this.diceThreshold = settings.diceThreshold;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key other = (Key) o;
+			return hash1 == other.hash1 && hash2 == other.hash2 && tokens == other.tokens 
+					&& language.equals(other.language) && comparisonId == other.comparisonId 
+					&& concatMultiWordUnits == other.concatMultiWordUnits
+					&& Double.compare(diceThreshold, other.diceThreshold) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) hash1;
+		}
+	}
+
+}
@@ -0,0 +1,228 @@
+package uhh_lt.keyterms;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Type frequencies sorted within a memory budget: entries are buffered and
+ * written to disk as a sorted run whenever the buffer exceeds the budget.
+ * {@link #merge(Handler)} reads all runs in one k-way merge and sums
+ * adjacent entries of the same type.
+ */
+class SortedRuns {
+
+	static final Comparator<Entry> TYPE_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			return e1.type.compareTo(e2.type);
+		}
+	};
+
+	// highest count first, ties in alphabetical order
+	static final Comparator<Entry> FREQUENCY_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			int cmp = Long.compare(e2.count, e1.count);
+			return cmp != 0 ? cmp : e1.type.compareTo(e2.type);
+		}
+	};
+
+	private final static Logger LOGGER = 
+			Logger.getLogger(Extractor.class.getName());
+
+	interface Handler {
+		void entry(String type, long count) throws IOException;
+	}
+
+	static class Entry {
+
+		final String type;
+		final long count;
+
+		Entry(String type, long count) {
+			this.type = type;
+			this.count = count;
+		}
+	}
+
+	private final Comparator<Entry> order;
+	private final long memoryBudget;
+	private final Path temporaryDirectory;
+	private final List<Path> files = new ArrayList<Path>();
+	private List<Entry> buffer = new ArrayList<Entry>();
+	private long bufferSize = 0;
+
+	/**
+	 * @param temporaryDirectory directory of the runs, null for the default
+	 * temporary-file directory
+	 */
+	SortedRuns(Comparator<Entry> order, long memoryBudget, Path temporaryDirectory) {
+		this.order = order;
+		this.memoryBudget = memoryBudget;
+		this.temporaryDirectory = temporaryDirectory;
+	}
+
+	// rough heap size of a counted type, see Dictionary.estimateHeapSize
+	static long estimateSize(String type) {
+		return 96 + 2 * type.length();
+	}
+
+	int size() {
+		return files.size() + (buffer.isEmpty() ? 0 : 1);
+	}
+
+	void add(String type, long count) throws IOException {
+		buffer.add(new Entry(type, count));
+		bufferSize += estimateSize(type);
+		if (bufferSize > memoryBudget) {
+			spill(buffer);
+			buffer = new ArrayList<Entry>();
+			bufferSize = 0;
+		}
+	}
+
+	/**
+	 * Writes the entries as a new run.
+	 */
+	void spill(List<Entry> entries) throws IOException {
+		Collections.sort(entries, order);
+		Path file = temporaryDirectory == null 
+				? Files.createTempFile("keyterms-run", ".tsv") 
+				: Files.createTempFile(temporaryDirectory, "keyterms-run", ".tsv");
+		files.add(file);
+		try (BufferedWriter writer = Files.newBufferedWriter(file, Charsets.UTF_8)) {
+			for (Entry entry : entries) {
+				writer.write(entry.type + "\t" + entry.count + "\n");
+			}
+		}
+		LOGGER.log(Level.FINE, "Spilled " + entries.size() + " types to " + file);
+	}
+
+	void merge(Handler handler) throws IOException {
+		Collections.sort(buffer, order);
+		List<RunReader> readers = new ArrayList<RunReader>();
+		PriorityQueue<Source> queue = new PriorityQueue<Source>(Math.max(1, size()), new Comparator<Source>() {
+			@Override
+			public int compare(Source s1, Source s2) {
+				return order.compare(s1.current, s2.current);
+			}
+		});
+		try {
+			for (Path file : files) {
+				RunReader reader = new RunReader(file);
+				readers.add(reader);
+				Source.offer(queue, reader);
+			}
+			Source.offer(queue, buffer.iterator());
+			String type = null;
+			long count = 0;
+			while (!queue.isEmpty()) {
+				Source source = queue.poll();
+				Entry entry = source.current;
+				if (type != null && !type.equals(entry.type)) {
+					handler.entry(type, count);
+					count = 0;
+				}
+				type = entry.type;
+				count += entry.count;
+				if (source.advance()) {
+					queue.add(source);
+				}
+			}
+			if (type != null) {
+				handler.entry(type, count);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the runs on disk and clears the buffer.
+	 */
+	void delete() throws IOException {
+		for (Path file : files) {
+			Files.deleteIfExists(file);
+		}
+		files.clear();
+		buffer = new ArrayList<Entry>();
+		bufferSize = 0;
+	}
+
+	private static class Source {
+
+		final Iterator<Entry> entries;
+		Entry current;
+
+		Source(Iterator<Entry> entries) {
+			this.entries = entries;
+		}
+
+		static void offer(PriorityQueue<Source> queue, Iterator<Entry> entries) {
+			Source source = new Source(entries);
+			if (source.advance()) {
+				queue.add(source);
+			}
+		}
+
+		boolean advance() {
+			current = entries.hasNext() ? entries.next() : null;
+			return current != null;
+		}
+	}
+
+	private static class RunReader implements Iterator<Entry>, Closeable {
+
+		private final BufferedReader reader;
+		private String line;
+
+		RunReader(Path file) throws IOException {
+			this.reader = Files.newBufferedReader(file, Charsets.UTF_8);
+			this.line = reader.readLine();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return line != null;
+		}
+
+		@Override
+		public Entry next() {
+			if (line == null) throw new NoSuchElementException();
+			int tab = line.lastIndexOf('\t');
+			Entry entry = new Entry(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+			try {
+				line = reader.readLine();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return entry;
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+
+}
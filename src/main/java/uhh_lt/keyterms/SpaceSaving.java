@@ -0,0 +1,135 @@
+package uhh_lt.keyterms;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy hitters: the counts of at most <i>capacity</i> items.
+ * A new item replaces the item with the lowest count and inherits that
+ * count as its error. Every item with a count above total / capacity is
+ * kept, and a kept count exceeds the true count by at most its error.
+ *
+ * Each item carries a value (e.g. the stem of a type), set when it enters.
+ * The counters form a min-heap, so an update takes O(log capacity).
+ */
+class SpaceSaving {
+
+	private final int capacity;
+	private final String[] items;
+	private final String[] values;
+	private final long[] counts;
+	private final long[] errors;
+	// heap of counter indices, ordered by count
+	private final int[] heap;
+	private final int[] positions;
+	private final Map<String, Integer> index;
+	private int size = 0;
+
+	SpaceSaving(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.items = new String[capacity];
+		this.values = new String[capacity];
+		this.counts = new long[capacity];
+		this.errors = new long[capacity];
+		this.heap = new int[capacity];
+		this.positions = new int[capacity];
+		this.index = new HashMap<String, Integer>(capacity * 2);
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void add(String item, String value, long count) {
+		Integer counter = index.get(item);
+		if (counter == null) {
+			if (size < capacity) {
+				counter = size;
+				heap[size] = counter;
+				positions[counter] = size;
+				size++;
+				errors[counter] = 0;
+				counts[counter] = 0;
+				siftUp(positions[counter]);
+			} else {
+				// replace the minimum
+				counter = heap[0];
+				index.remove(items[counter]);
+				errors[counter] = counts[counter];
+			}
+			items[counter] = item;
+			values[counter] = value;
+			index.put(item, counter);
+		}
+		counts[counter] += count;
+		siftDown(positions[counter]);
+	}
+
+	/**
+	 * @return the lowest kept count (0 while there is room), an upper bound
+	 * of the count of every item that is not kept
+	 */
+	long getMinimum() {
+		return size < capacity ? 0 : counts[heap[0]];
+	}
+
+	/**
+	 * @return the counter of a kept item, or -1
+	 */
+	int getCounter(String item) {
+		Integer counter = index.get(item);
+		return counter == null ? -1 : counter;
+	}
+
+	String getItem(int counter) {
+		return items[counter];
+	}
+
+	String getValue(int counter) {
+		return values[counter];
+	}
+
+	long getCount(int counter) {
+		return counts[counter];
+	}
+
+	long getError(int counter) {
+		return errors[counter];
+	}
+
+	private void siftUp(int pos) {
+		int counter = heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (counts[heap[parent]] <= counts[counter]) break;
+			heap[pos] = heap[parent];
+			positions[heap[pos]] = pos;
+			pos = parent;
+		}
+		heap[pos] = counter;
+		positions[counter] = pos;
+	}
+
+	private void siftDown(int pos) {
+		int counter = heap[pos];
+		int half = size >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) child++;
+			if (counts[heap[child]] >= counts[counter]) break;
+			heap[pos] = heap[child];
+			positions[heap[pos]] = pos;
+			pos = child;
+		}
+		heap[pos] = counter;
+		positions[counter] = pos;
+	}
+
+}
@@ -1,5 +1,7 @@
 package uhh_lt.keyterms;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.tartarus.snowball.SnowballStemmer;
 import org.tartarus.snowball.ext.danishStemmer;
 import org.tartarus.snowball.ext.dutchStemmer;
@@ -17,12 +19,59 @@ import org.tartarus.snowball.ext.spanishStemmer;
 import org.tartarus.snowball.ext.swedishStemmer;
 import org.tartarus.snowball.ext.turkishStemmer;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Snowball stemming for a language. Stemmers are kept per thread, so one
+ * instance can be shared; stems are memoized in a bounded concurrent cache.
+ * Use {@link #forLanguage(String)} to obtain the process-wide instance.
+ */
 public class StemmerWrapper {
-	
-	private SnowballStemmer stemmer;
+
+	public static final String CACHE_SIZE_PROPERTY = "keyterms.stemcache.size";
+	public static final int DEFAULT_CACHE_SIZE = 100000;
+
+	private static final ConcurrentHashMap<String, StemmerWrapper> SHARED = 
+			new ConcurrentHashMap<String, StemmerWrapper>();
+
+	private final String language;
+	private final boolean identity;
+	private final ThreadLocal<SnowballStemmer> stemmer;
+	private final Cache<String, String> cache;
 
 	public StemmerWrapper(String language) {
+		this(language, Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE));
+	}
+
+	public StemmerWrapper(final String language, int cacheSize) {
 		super();
+		this.language = language;
+		this.identity = createStemmer(language) instanceof NoStemmer;
+		this.stemmer = new ThreadLocal<SnowballStemmer>() {
+			@Override
+			protected SnowballStemmer initialValue() {
+				return createStemmer(language);
+			}
+		};
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(cacheSize)
+				.recordStats()
+				.build();
+	}
+
+	public static StemmerWrapper forLanguage(String language) {
+		StemmerWrapper wrapper = SHARED.get(language);
+		if (wrapper == null) {
+			SHARED.putIfAbsent(language, new StemmerWrapper(language));
+			wrapper = SHARED.get(language);
+		}
+		return wrapper;
+	}
+
+	private static SnowballStemmer createStemmer(String language) {
+		SnowballStemmer stemmer;
 		switch (language) {
 		case "eng":
 			stemmer = new englishStemmer();
@@ -72,16 +121,25 @@ public class StemmerWrapper {
 		default:
 			stemmer = new NoStemmer();
 		}
-
+		return stemmer;
 	}
 	
-	public synchronized String stem(String word) {
-		stemmer.setCurrent(word);
-		stemmer.stem();
-		return stemmer.getCurrent();
+	public String stem(String word) {
+		if (identity) {
+			return word;
+		}
+		String stem = cache.getIfPresent(word);
+		if (stem == null) {
+			SnowballStemmer stemmer = this.stemmer.get();
+			stemmer.setCurrent(word);
+			stemmer.stem();
+			stem = stemmer.getCurrent();
+			cache.put(word, stem);
+		}
+		return stem;
 	}
 	
-	public class NoStemmer extends org.tartarus.snowball.SnowballStemmer {
+	public static class NoStemmer extends org.tartarus.snowball.SnowballStemmer {
 
 		@Override
 		public boolean stem() {
@@ -90,8 +148,27 @@ public class StemmerWrapper {
 
 	}
 
+	public String getLanguage() {
+		return language;
+	}
+
+	/**
+	 * @return the stemmer of the calling thread
+	 */
 	public SnowballStemmer getStemmer() {
-		return stemmer;
+		return stemmer.get();
+	}
+
+	public CacheStats getCacheStats() {
+		return cache.stats();
+	}
+
+	public double getCacheHitRate() {
+		return cache.stats().hitRate();
+	}
+
+	public long getCacheSize() {
+		return cache.size();
 	}
 
 }
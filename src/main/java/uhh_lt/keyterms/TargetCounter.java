@@ -0,0 +1,280 @@
+package uhh_lt.keyterms;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fused target pipeline: tokenizes, normalizes the sentence beginnings,
+ * stems and counts a text in one pass, without a list of {@link Token}s.
+ * The result is the same as loading a {@link Document}, normalizing it
+ * against the comparison dictionary and creating the target
+ * {@link Dictionary} from it.
+ *
+ * Everything that only depends on a token string is done once per distinct
+ * token: stemming, the sentence end test, the reference lookups of the
+ * normalization and cleaning the type and stem. A token then costs one
+ * vocabulary lookup and two count increments. The types are stemmed once
+ * for the stem-type mapping, and the stem id of every token is kept in an
+ * int array for the multi-word units.
+ *
+ * Text can be added in chunks (see {@link DocumentReader}); a sentence
+ * beginning is carried over from one chunk to the next.
+ *
+ * The once per token work is timed by stage (stemming, the normalization
+ * decision, resolving the target ids); the rest of the pass, scanning and
+ * the per-token lookup and increments, is tokenization time, or count time
+ * for tokens segmented with ICU. Only the first occurrence of a token is
+ * timed, so the timers do not slow down the pass.
+ */
+class TargetCounter {
+
+	private static final int UNKNOWN = -2;
+
+	// flags by token id
+	private static final byte SEEN = 1;
+	private static final byte SENTENCE_END = 2;
+	private static final byte DECIDED = 4;
+	private static final byte LOWERCASE = 8;
+
+	private final Extractor.Settings settings;
+	private final String language;
+	private final StemmerWrapper stemmer;
+	private final Dictionary comparison;
+	private final Document segmenter;
+
+	private final Vocabulary tokens = new Vocabulary();
+	private final TermTable table;
+	private long totalCounts = 0L;
+
+	// by token id: its stem, its flags and the target ids of the token as it
+	// is (variant 0) and lowercased at a sentence beginning (variant 1):
+	// cleaned stem, cleaned type (-1 if the type is empty), stem
+	private String[] stems = new String[1024];
+	private byte[] flags = new byte[1024];
+	private int[] ids = newIds(1024);
+	// stems of the types by target id, for the stem-type mapping
+	private String[] typeStems = new String[1024];
+	// target stem id of each token
+	private int[] stemIds = new int[1024];
+	private int size = 0;
+	private boolean sentenceBeginning = true;
+
+	private long tokenizeNanos = 0L;
+	private long stemNanos = 0L;
+	private long normalizeNanos = 0L;
+	private long countNanos = 0L;
+
+	private final Tokenizer.TokenHandler handler = new Tokenizer.TokenHandler() {
+		@Override
+		public void token(CharSequence source, int start, int end) {
+			count(tokens.add(source, start, end));
+		}
+	};
+
+	TargetCounter(Extractor.Settings settings, int expectedSize) {
+		this.settings = settings;
+		this.language = settings.language;
+		this.stemmer = StemmerWrapper.forLanguage(language);
+		this.comparison = settings.comparison;
+		this.segmenter = Document.useICU(language) ? new Document(language) : null;
+		this.table = new TermTable(Math.max(16, expectedSize));
+	}
+
+	private static int[] newIds(int capacity) {
+		int[] ids = new int[6 * capacity];
+		Arrays.fill(ids, UNKNOWN);
+		return ids;
+	}
+
+	/**
+	 * Counts a text, or the next chunk of one.
+	 */
+	void add(CharSequence text) {
+		long start = System.nanoTime();
+		if (segmenter != null) {
+			List<String> segmented = segmenter.tokenize(text.toString());
+			tokenizeNanos += System.nanoTime() - start;
+			add(segmented);
+			return;
+		}
+		long timed = getTimedNanos();
+		Tokenizer.scan(text, handler);
+		tokenizeNanos += System.nanoTime() - start - (getTimedNanos() - timed);
+	}
+
+	/**
+	 * Counts tokens; empty tokens are skipped.
+	 */
+	void add(List<String> tokenList) {
+		long start = System.nanoTime();
+		long timed = getTimedNanos();
+		countTokens(tokenList);
+		countNanos += System.nanoTime() - start - (getTimedNanos() - timed);
+	}
+
+	// time of the stages timed within the pass
+	private long getTimedNanos() {
+		return stemNanos + normalizeNanos + countNanos;
+	}
+
+	private void countTokens(List<String> tokenList) {
+		for (String token : tokenList) {
+			if (!token.isEmpty()) {
+				count(tokens.add(token));
+			}
+		}
+	}
+
+	DocumentReader.ChunkHandler chunkHandler() {
+		return new DocumentReader.ChunkHandler() {
+			@Override
+			public void chunk(CharBuffer chunk) {
+				add(chunk);
+			}
+		};
+	}
+
+	private void count(int token) {
+		if (token >= flags.length) {
+			grow(token);
+		}
+		if ((flags[token] & SEEN) == 0) {
+			long start = System.nanoTime();
+			String value = tokens.getTerm(token);
+			stems[token] = stemmer.stem(value);
+			flags[token] |= SEEN | (value.matches("[\\.\\?\\!]$") ? SENTENCE_END : 0);
+			stemNanos += System.nanoTime() - start;
+		}
+		int variant = sentenceBeginning && isLowercased(token) ? 1 : 0;
+		int base = 3 * (2 * token + variant);
+		if (ids[base] == UNKNOWN) {
+			long start = System.nanoTime();
+			long stemmed = stemNanos;
+			resolve(token, variant, base);
+			countNanos += System.nanoTime() - start - (stemNanos - stemmed);
+		}
+		int typeId = ids[base + 1];
+		if (typeId >= 0) {
+			table.addStem(ids[base], 1);
+			table.addType(typeId, 1);
+			totalCounts++;
+		}
+		if (size == stemIds.length) {
+			stemIds = Arrays.copyOf(stemIds, 2 * size);
+		}
+		stemIds[size++] = ids[base + 2];
+		sentenceBeginning = (flags[token] & SENTENCE_END) != 0;
+	}
+
+	// lowercased at a sentence beginning, if the lowercased type is more frequent in the reference
+	private boolean isLowercased(int token) {
+		if ((flags[token] & DECIDED) == 0) {
+			long start = System.nanoTime();
+			String value = tokens.getTerm(token);
+			boolean lowercase = Character.isUpperCase(value.charAt(0))
+					&& comparison.getTypeFrequency(value.toLowerCase()) > comparison.getTypeFrequency(value);
+			flags[token] |= DECIDED | (lowercase ? LOWERCASE : 0);
+			normalizeNanos += System.nanoTime() - start;
+		}
+		return (flags[token] & LOWERCASE) != 0;
+	}
+
+	// the target ids of a token variant, added in the order of Dictionary.countVocabulary
+	private void resolve(int token, int variant, int base) {
+		String value = tokens.getTerm(token);
+		String stem = stems[token];
+		if (variant == 1) {
+			value = value.toLowerCase();
+			stem = stem.toLowerCase();
+		}
+		String type = Dictionary.clean(value);
+		int stemId = -1;
+		int typeId = -1;
+		if (!type.isEmpty()) {
+			stemId = table.add(Dictionary.clean(stem));
+			typeId = table.add(type);
+			if (typeId >= typeStems.length) {
+				typeStems = Arrays.copyOf(typeStems, Math.max(2 * typeStems.length, typeId + 1));
+			}
+			if (typeStems[typeId] == null) {
+				long start = System.nanoTime();
+				typeStems[typeId] = stemmer.stem(type);
+				stemNanos += System.nanoTime() - start;
+			}
+		}
+		ids[base] = stemId;
+		ids[base + 1] = typeId;
+		ids[base + 2] = table.add(stem);
+	}
+
+	private void grow(int token) {
+		int capacity = Math.max(2 * flags.length, token + 1);
+		stems = Arrays.copyOf(stems, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		int[] grown = newIds(capacity);
+		System.arraycopy(ids, 0, grown, 0, ids.length);
+		ids = grown;
+	}
+
+	/**
+	 * @return the number of tokens counted
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the target stem id of each token, see {@link Document#getStemIds(Dictionary)}
+	 */
+	int[] getStemIds() {
+		return Arrays.copyOf(stemIds, size);
+	}
+
+	/**
+	 * @return the settings of the extraction the text is counted for
+	 */
+	Extractor.Settings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * @return the time spent scanning the text and looking up the tokens,
+	 * or segmenting it with ICU (Chinese, Japanese, Arabic)
+	 */
+	long getTokenizeNanos() {
+		return tokenizeNanos;
+	}
+
+	/**
+	 * @return the time spent stemming the distinct tokens and types
+	 */
+	long getStemNanos() {
+		return stemNanos;
+	}
+
+	/**
+	 * @return the time spent deciding whether the distinct tokens are
+	 * lowercased at a sentence beginning
+	 */
+	long getNormalizeNanos() {
+		return normalizeNanos;
+	}
+
+	/**
+	 * @return the time spent resolving the target ids of the distinct tokens
+	 * and counting segmented tokens
+	 */
+	long getCountNanos() {
+		return countNanos;
+	}
+
+	/**
+	 * @return the target dictionary of the counts; the counter must not be
+	 * used afterwards
+	 */
+	Dictionary toDictionary() {
+		return new Dictionary(language, table, totalCounts, typeStems);
+	}
+
+}
@@ -0,0 +1,88 @@
+package uhh_lt.keyterms;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Read-only set view of the types or stems of a term store.
+ */
+abstract class TermSet extends AbstractSet<String> {
+
+	private final TermStore store;
+	private final int setSize;
+
+	private TermSet(TermStore store, int setSize) {
+		this.store = store;
+		this.setSize = setSize;
+	}
+
+	abstract boolean accept(int id);
+
+	static TermSet types(final TermStore store) {
+		return new TermSet(store, store.getTypeCount()) {
+			@Override
+			boolean accept(int id) {
+				return store.getTypeFrequency(id) > 0;
+			}
+		};
+	}
+
+	static TermSet stems(final TermStore store) {
+		return new TermSet(store, store.getStemCount()) {
+			@Override
+			boolean accept(int id) {
+				return store.getStemFrequency(id) > 0;
+			}
+		};
+	}
+
+	static SortedSet<String> stopwords(TermStore store) {
+		TreeSet<String> stopwords = new TreeSet<String>();
+		int n = store.getStopwordCount();
+		for (int id = 0; id < store.size() && stopwords.size() < n; id++) {
+			if (store.isStopword(id)) {
+				stopwords.add(store.getTerm(id));
+			}
+		}
+		return stopwords;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof String && accept(store.getId((String) o));
+	}
+
+	@Override
+	public int size() {
+		return setSize;
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+			int next = advance(0);
+
+			private int advance(int id) {
+				while (id < store.size() && !accept(id)) id++;
+				return id;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next < store.size();
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				String term = store.getTerm(next);
+				next = advance(next + 1);
+				return term;
+			}
+		};
+	}
+
+}
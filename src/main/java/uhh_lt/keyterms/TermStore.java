@@ -0,0 +1,45 @@
+package uhh_lt.keyterms;
+
+/**
+ * Id based access to the counts of a dictionary. Ids are dense (0 to
+ * size() - 1) and shared by types, stems and stopwords: a string has the
+ * same id whether it is used as type or as stem. Unknown terms have id -1,
+ * for which all counts are 0.
+ */
+interface TermStore {
+
+	int size();
+
+	int getId(String term);
+
+	String getTerm(int id);
+
+	long getTypeFrequency(int id);
+
+	long getStemFrequency(int id);
+
+	/**
+	 * @return id of the type representing a stem, or -1
+	 */
+	int getStemType(int id);
+
+	boolean isStopword(int id);
+
+	int getTypeCount();
+
+	int getStemCount();
+
+	int getStopwordCount();
+
+	/**
+	 * @return estimated size in bytes on the heap
+	 */
+	long estimateHeapSize();
+
+	/**
+	 * @return size in bytes of the direct or mapped buffer outside the
+	 * heap, or 0
+	 */
+	long getOffHeapSize();
+
+}
@@ -0,0 +1,129 @@
+package uhh_lt.keyterms;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Heap term store: a vocabulary with counts in primitive arrays indexed by
+ * term id.
+ */
+class TermTable implements TermStore {
+
+	private final Vocabulary vocabulary;
+	private long[] typeCounts;
+	private long[] stemCounts;
+	private int[] stemTypes;
+	private final BitSet stopwords = new BitSet();
+
+	private int typeCount;
+	private int stemCount;
+
+	TermTable() {
+		this(1024);
+	}
+
+	TermTable(int expectedSize) {
+		this.vocabulary = new Vocabulary(expectedSize);
+		this.typeCounts = new long[Math.max(16, expectedSize)];
+		this.stemCounts = new long[typeCounts.length];
+		this.stemTypes = new int[typeCounts.length];
+		Arrays.fill(stemTypes, -1);
+	}
+
+	int add(String term) {
+		int id = vocabulary.add(term);
+		if (id == typeCounts.length) {
+			int capacity = id * 2;
+			typeCounts = Arrays.copyOf(typeCounts, capacity);
+			stemCounts = Arrays.copyOf(stemCounts, capacity);
+			stemTypes = Arrays.copyOf(stemTypes, capacity);
+			Arrays.fill(stemTypes, id, capacity, -1);
+		}
+		return id;
+	}
+
+	void addType(int id, long count) {
+		if (typeCounts[id] == 0 && count > 0) typeCount++;
+		typeCounts[id] += count;
+	}
+
+	void addStem(int id, long count) {
+		if (stemCounts[id] == 0 && count > 0) stemCount++;
+		stemCounts[id] += count;
+	}
+
+	void setStemType(int id, int typeId) {
+		stemTypes[id] = typeId;
+	}
+
+	void setStemTypes(int[] stemTypes) {
+		this.stemTypes = Arrays.copyOf(stemTypes, typeCounts.length);
+		Arrays.fill(this.stemTypes, stemTypes.length, typeCounts.length, -1);
+	}
+
+	void addStopword(int id) {
+		stopwords.set(id);
+	}
+
+	@Override
+	public long estimateHeapSize() {
+		return 64 + vocabulary.estimateHeapSize() + 16 + 8L * typeCounts.length + 16 + 8L * stemCounts.length 
+				+ 16 + 4L * stemTypes.length + 32 + stopwords.size() / 8;
+	}
+
+	@Override
+	public long getOffHeapSize() {
+		return 0;
+	}
+
+	@Override
+	public int size() {
+		return vocabulary.size();
+	}
+
+	@Override
+	public int getId(String term) {
+		return vocabulary.getId(term);
+	}
+
+	@Override
+	public String getTerm(int id) {
+		return vocabulary.getTerm(id);
+	}
+
+	@Override
+	public long getTypeFrequency(int id) {
+		return id < 0 ? 0 : typeCounts[id];
+	}
+
+	@Override
+	public long getStemFrequency(int id) {
+		return id < 0 ? 0 : stemCounts[id];
+	}
+
+	@Override
+	public int getStemType(int id) {
+		return id < 0 ? -1 : stemTypes[id];
+	}
+
+	@Override
+	public boolean isStopword(int id) {
+		return id >= 0 && stopwords.get(id);
+	}
+
+	@Override
+	public int getTypeCount() {
+		return typeCount;
+	}
+
+	@Override
+	public int getStemCount() {
+		return stemCount;
+	}
+
+	@Override
+	public int getStopwordCount() {
+		return stopwords.cardinality();
+	}
+
+}
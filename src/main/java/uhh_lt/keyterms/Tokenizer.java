@@ -0,0 +1,112 @@
+package uhh_lt.keyterms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scanning tokenizer with the token boundaries of the regular expression
+ * <code>[\w]+|[^\w]</code> (Unicode character classes), applied after
+ * replacing paragraph breaks (two or more line break characters) by a
+ * paragraph mark and single line breaks by a space. Whitespace and other
+ * characters up to U+0020 are dropped.
+ *
+ * Tokens are reported as offsets into the source; no copy of the text is
+ * made. The paragraph mark is reported as the range (0, 1) of
+ * {@link #PARAGRAPH_MARK}.
+ */
+public class Tokenizer {
+
+	public static final String PARAGRAPH_MARK = ".";
+
+	public interface TokenHandler {
+		void token(CharSequence source, int start, int end);
+	}
+
+	public static void scan(CharSequence text, TokenHandler handler) {
+		scan(text, 0, text.length(), handler);
+	}
+
+	public static void scan(CharSequence text, int from, int to, TokenHandler handler) {
+		int i = from;
+		while (i < to) {
+			char ch = text.charAt(i);
+			if (ch == '\r' || ch == '\n') {
+				int end = i + 1;
+				while (end < to && isLineBreak(text.charAt(end))) end++;
+				if (end - i > 1) {
+					handler.token(PARAGRAPH_MARK, 0, 1);
+				}
+				i = end;
+				continue;
+			}
+			int codePoint = Character.codePointAt(text, i);
+			int next = i + Character.charCount(codePoint);
+			if (isWordCharacter(codePoint)) {
+				while (next < to) {
+					int c = Character.codePointAt(text, next);
+					if (!isWordCharacter(c)) break;
+					next += Character.charCount(c);
+				}
+				handler.token(text, i, next);
+			} else if (codePoint > ' ') {
+				handler.token(text, i, next);
+			}
+			i = next;
+		}
+	}
+
+	/**
+	 * Tokenizes a text; repeated tokens share one string instance.
+	 */
+	public static List<String> tokenize(CharSequence text) {
+		final Vocabulary vocabulary = new Vocabulary();
+		final List<String> tokens = new ArrayList<String>();
+		scan(text, new TokenHandler() {
+			@Override
+			public void token(CharSequence source, int start, int end) {
+				tokens.add(vocabulary.getTerm(vocabulary.add(source, start, end)));
+			}
+		});
+		return tokens;
+	}
+
+	/**
+	 * Returns the last offset in (from, to] at which the text can be split
+	 * without changing its tokens: after a space or a tab, or after a run of
+	 * line breaks that is followed by another character. Returns -1 if there
+	 * is no such offset.
+	 */
+	public static int lastBoundary(CharSequence text, int from, int to) {
+		for (int i = to; i > from; i--) {
+			char ch = text.charAt(i - 1);
+			if (ch == ' ' || ch == '\t') {
+				return i;
+			}
+			if (isLineBreak(ch) && i < to && !isLineBreak(text.charAt(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	static boolean isLineBreak(char ch) {
+		return ch == '\r' || ch == '\n';
+	}
+
+	// \w with Pattern.UNICODE_CHARACTER_CLASS
+	static boolean isWordCharacter(int codePoint) {
+		if (codePoint < 128) {
+			return (codePoint >= 'a' && codePoint <= 'z') || (codePoint >= 'A' && codePoint <= 'Z')
+					|| (codePoint >= '0' && codePoint <= '9') || codePoint == '_';
+		}
+		return Character.isAlphabetic(codePoint)
+				|| ((((1 << Character.NON_SPACING_MARK)
+						| (1 << Character.ENCLOSING_MARK)
+						| (1 << Character.COMBINING_SPACING_MARK)
+						| (1 << Character.DECIMAL_DIGIT_NUMBER)
+						| (1 << Character.CONNECTOR_PUNCTUATION))
+						>> Character.getType(codePoint)) & 1) != 0
+				|| codePoint == 0x200C || codePoint == 0x200D;
+	}
+
+}
@@ -0,0 +1,194 @@
+package uhh_lt.keyterms;
+
+import java.util.Arrays;
+
+/**
+ * Interned vocabulary mapping terms to dense int ids (0, 1, 2, ...) in the
+ * order they were added. Lookups use an open-addressing hash table without
+ * boxing. Concurrent reads are safe as long as no terms are added.
+ *
+ * Removed ids are reused by the next added terms, so ids stay dense below
+ * {@link #size()} but are no longer in insertion order.
+ */
+public class Vocabulary {
+
+	private static final int EMPTY = -1;
+
+	private String[] terms;
+	private int[] hashes;
+	private int[] table;
+	private int mask;
+	private int size;
+	private int[] free = new int[0];
+	private int freeCount;
+
+	public Vocabulary() {
+		this(1024);
+	}
+
+	public Vocabulary(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+		this.terms = new String[Math.max(16, expectedSize)];
+		this.hashes = new int[terms.length];
+		this.table = new int[capacity];
+		this.mask = capacity - 1;
+		Arrays.fill(table, EMPTY);
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	public int getId(String term) {
+		int hash = mix(term.hashCode());
+		for (int i = hash & mask; ; i = (i + 1) & mask) {
+			int id = table[i];
+			if (id == EMPTY) return -1;
+			if (hashes[id] == hash && terms[id].equals(term)) return id;
+		}
+	}
+
+	public int getId(CharSequence chars, int start, int end) {
+		int hash = mix(hashCode(chars, start, end));
+		for (int i = hash & mask; ; i = (i + 1) & mask) {
+			int id = table[i];
+			if (id == EMPTY) return -1;
+			if (hashes[id] == hash && regionMatches(terms[id], chars, start, end)) return id;
+		}
+	}
+
+	public int add(String term) {
+		int hash = mix(term.hashCode());
+		int i = hash & mask;
+		for (; ; i = (i + 1) & mask) {
+			int id = table[i];
+			if (id == EMPTY) break;
+			if (hashes[id] == hash && terms[id].equals(term)) return id;
+		}
+		return insert(term, hash, i);
+	}
+
+	/**
+	 * Adds a range of characters; a string is only created for new terms.
+	 */
+	public int add(CharSequence chars, int start, int end) {
+		int hash = mix(hashCode(chars, start, end));
+		int i = hash & mask;
+		for (; ; i = (i + 1) & mask) {
+			int id = table[i];
+			if (id == EMPTY) break;
+			if (hashes[id] == hash && regionMatches(terms[id], chars, start, end)) return id;
+		}
+		return insert(chars.subSequence(start, end).toString(), hash, i);
+	}
+
+	private int insert(String term, int hash, int i) {
+		if (freeCount > 0) {
+			int id = free[--freeCount];
+			terms[id] = term;
+			hashes[id] = hash;
+			table[i] = id;
+			return id;
+		}
+		int id = size++;
+		if (id == terms.length) {
+			terms = Arrays.copyOf(terms, id * 2);
+			hashes = Arrays.copyOf(hashes, id * 2);
+		}
+		terms[id] = term;
+		hashes[id] = hash;
+		table[i] = id;
+		if (size * 2 > table.length) {
+			rehash(table.length * 2);
+		}
+		return id;
+	}
+
+	/**
+	 * Removes a term; its id is reused by a later {@link #add(String)}.
+	 */
+	public void remove(int id) {
+		int i = hashes[id] & mask;
+		while (table[i] != id) {
+			i = (i + 1) & mask;
+		}
+		// backward shift deletion: move up the entries probed past the hole
+		int hole = i;
+		for (int j = (i + 1) & mask; table[j] != EMPTY; j = (j + 1) & mask) {
+			int home = hashes[table[j]] & mask;
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				table[hole] = table[j];
+				hole = j;
+			}
+		}
+		table[hole] = EMPTY;
+		terms[id] = null;
+		if (freeCount == free.length) {
+			free = Arrays.copyOf(free, Math.max(16, freeCount * 2));
+		}
+		free[freeCount++] = id;
+	}
+
+	/**
+	 * @return estimated size in bytes of the terms and the hash table on the
+	 * heap (with compressed references)
+	 */
+	public long estimateHeapSize() {
+		long size = 5 * 16 + 4L * terms.length + 4L * hashes.length + 4L * table.length + 4L * free.length;
+		for (int id = 0; id < this.size; id++) {
+			if (terms[id] != null) size += estimateSize(terms[id]);
+		}
+		return size;
+	}
+
+	/**
+	 * @return estimated size in bytes of a string with its character array
+	 */
+	static long estimateSize(String term) {
+		return 24 + ((16 + 2L * term.length() + 7) & ~7L);
+	}
+
+	// same as String.hashCode()
+	private static int hashCode(CharSequence chars, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + chars.charAt(i);
+		}
+		return hash;
+	}
+
+	private static boolean regionMatches(String term, CharSequence chars, int start, int end) {
+		if (term.length() != end - start) return false;
+		for (int i = 0; i < term.length(); i++) {
+			if (term.charAt(i) != chars.charAt(start + i)) return false;
+		}
+		return true;
+	}
+
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		mask = capacity - 1;
+		Arrays.fill(table, EMPTY);
+		for (int id = 0; id < size; id++) {
+			if (terms[id] == null) continue;
+			int i = hashes[id] & mask;
+			while (table[i] != EMPTY) {
+				i = (i + 1) & mask;
+			}
+			table[i] = id;
+		}
+	}
+
+	public String getTerm(int id) {
+		return terms[id];
+	}
+
+	/**
+	 * @return upper bound of the ids, including removed ones
+	 */
+	public int size() {
+		return size;
+	}
+
+}